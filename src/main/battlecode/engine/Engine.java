@@ -1,8 +1,5 @@
 package battlecode.engine;
 
-import battlecode.engine.instrumenter.IndividualClassLoader;
-import battlecode.engine.instrumenter.RobotMonitor;
-import battlecode.engine.instrumenter.lang.RoboRandom;
 import battlecode.engine.scheduler.Scheduler;
 import battlecode.engine.signal.Signal;
 import battlecode.server.Config;
@@ -20,21 +17,28 @@ public class Engine {
     private final boolean garbageCollectEnabled;
     private final int garbageCollectRounds;
     private final boolean breakpointsEnabled;
-    private static Engine theInstance = null;
+    private final EngineContext context;
     private Runnable ioCallback;
 
     public Engine(String teamA, String teamB, String mapName, String mapPath, long[][] archonMemory) {
-        theInstance = this;
+        // the world loads the players as it is created, so the context has to be bound first
+        context = new EngineContext();
+        context.bind();
         Config options = Config.getGlobalConfig();
         this.garbageCollectEnabled = options.getBoolean("bc.engine.gc");
         this.garbageCollectRounds = options.getInt("bc.engine.gc-rounds");
         this.breakpointsEnabled = options.getBoolean("bc.engine.breakpoints");
         GenericWorld tempGameWorld = null;
         //InternalObject.resetIDs();
-        IndividualClassLoader.reset();
-        Scheduler.reset();
-        RobotMonitor.reset();
         PlayerFactory.checkOptions();
+        if (options.getBoolean("bc.engine.preinstrument")) {
+            long start = System.nanoTime();
+            int classes = PlayerFactory.preinstrumentPlayer(teamA);
+            if (!teamB.equals(teamA))
+                classes += PlayerFactory.preinstrumentPlayer(teamB);
+            if (context.getMetrics() != null)
+                context.getMetrics().recordPreinstrumentation(System.nanoTime() - start, classes);
+        }
         try {
             try {
                 tempGameWorld = GameWorldFactory.createGameWorld(teamA, teamB, mapName, mapPath, archonMemory);
@@ -49,9 +53,8 @@ public class Engine {
             gameWorld = tempGameWorld;
         }
         gameWorld.resetStatic();
-        RobotMonitor.setGameWorld(gameWorld);
-        RoboRandom.setMapSeed(gameWorld.getMapSeed());
-        Scheduler.start();
+        context.setGameWorld(gameWorld);
+        context.getScheduler().start();
     }
 
     public GameWorldViewer getGameWorldViewer() {
@@ -65,24 +68,36 @@ public class Engine {
         if (!gameWorld.isRunning()) {
             return GameState.DONE;
         }
+        context.bind();
+        Scheduler scheduler = context.getScheduler();
+        EngineMetrics metrics = context.getMetrics();
         try {
             if (gameWorld.getCurrentRound() != -1) {
                 gameWorld.clearAllSignals();
             }
+            long start = metrics != null ? System.nanoTime() : 0;
             gameWorld.processBeginningOfRound();
+            if (metrics != null)
+                metrics.recordBookkeeping(System.nanoTime() - start);
             if (getRoundNum() % 500 == 0) {
                 System.out.println("Round: " + getRoundNum());
             }
-            Scheduler.startNextThread();
+            scheduler.startNextThread();
             ioCallback.run();
-            Scheduler.endTurn();
+            scheduler.endTurn();
+            if (metrics != null)
+                start = System.nanoTime();
             gameWorld.processEndOfRound();
+            if (metrics != null)
+                metrics.recordBookkeeping(System.nanoTime() - start);
             if (!gameWorld.isRunning()) {
                 // Let all of the threads return so we don't leak
                 // memory.  GameWorld has already told RobotMonitor
                 // to kill all the robots;
                 //System.out.println("Trying to clean up robots");
-                Scheduler.passToNextThread();
+                scheduler.passToNextThread();
+                scheduler.reset();
+                context.getExecutionBackend().shutdown();
                 //System.out.println("Time spent in scheduler: "+(Scheduler.timeInScheduler*1.E-9));
             }
         } catch (Exception e) {
@@ -101,6 +116,7 @@ public class Engine {
      * @return true if the gamestate may have changed, false if the gamestate did not change
      */
     public boolean receiveSignal(Signal s) {
+        context.bind();
         gameWorld.clearAllSignals();
         try {
             s.accept(gameWorld);
@@ -114,8 +130,30 @@ public class Engine {
         return (gameWorld != null) && gameWorld.isRunning();
     }
 
+    /**
+     * Returns the current round of the match that the calling thread belongs to.
+     */
     public static int getRoundNum() {
-        return theInstance.gameWorld.getCurrentRound();
+        return EngineContext.current().getGameWorld().getCurrentRound();
+    }
+
+    /**
+     * Returns the metrics for this match, or null if metrics are disabled.
+     */
+    public EngineMetrics getMetrics() {
+        return context.getMetrics();
+    }
+
+    /**
+     * Returns a summary of this match's metrics, including how the Scheduler's handoffs were completed,
+     * or null if metrics are disabled.
+     */
+    public String getMetricsSummary() {
+        EngineMetrics metrics = context.getMetrics();
+        if (metrics == null)
+            return null;
+        Scheduler scheduler = context.getScheduler();
+        return metrics.getSummary() + "\nhandoffs: " + scheduler.getSpinHandoffs() + " while spinning, " + scheduler.getParkedHandoffs() + " after parking";
     }
 
     public long[][] getArchonMemory() {
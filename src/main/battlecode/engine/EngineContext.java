@@ -0,0 +1,106 @@
+package battlecode.engine;
+
+import battlecode.engine.instrumenter.IndividualClassLoader;
+import battlecode.engine.instrumenter.RobotMonitor;
+import battlecode.engine.scheduler.ExecutionBackend;
+import battlecode.engine.scheduler.ExecutionBackendFactory;
+import battlecode.engine.scheduler.Scheduler;
+import battlecode.server.Config;
+
+/**
+ * EngineContext holds the engine state that belongs to a single match: the scheduler ring, the robot monitor,
+ * the backend that creates robot threads, the cache of instrumented classes, the map seed and the game world.  Each Engine creates its own context, so
+ * several matches can run side by side in one JVM without sharing any of this state.
+ * <p/>
+ * Player code and much of the engine reach this state through static methods (e.g., RobotMonitor.incrementBytecodes),
+ * so every thread that runs engine or player code must be bound to its match's context first.  The Engine binds
+ * the thread that runs rounds, and ScheduledRunnable binds each robot thread.
+ */
+public class EngineContext {
+
+    private static final ThreadLocal<EngineContext> boundContext = new ThreadLocal<EngineContext>();
+
+    private final EngineMetrics metrics;
+    private final RobotMonitor robotMonitor;
+    private final Scheduler scheduler;
+    private final ExecutionBackend executionBackend;
+    private final IndividualClassLoader.Cache classCache;
+
+    private volatile GenericWorld gameWorld;
+    private volatile long mapSeed;
+
+    public EngineContext() {
+        Config options = Config.getGlobalConfig();
+        metrics = options.getBoolean("bc.engine.metrics") ? new EngineMetrics() : null;
+        robotMonitor = new RobotMonitor(this);
+        executionBackend = ExecutionBackendFactory.createBackend(options);
+        long spinNanos = executionBackend.canSpin() ? options.getInt("bc.engine.handoff-spin-ns") : 0;
+        scheduler = new Scheduler(robotMonitor, spinNanos, metrics);
+        classCache = new IndividualClassLoader.Cache();
+    }
+
+    /**
+     * Returns the context bound to the calling thread, or null if the thread is not running a match.
+     */
+    public static EngineContext current() {
+        return boundContext.get();
+    }
+
+    /**
+     * Binds this context to the calling thread.  Static engine methods called from this thread will then act on
+     * this context's match.
+     */
+    public void bind() {
+        boundContext.set(this);
+    }
+
+    /**
+     * Unbinds whatever context is bound to the calling thread, so that a finished match can be garbage collected.
+     */
+    public static void unbind() {
+        boundContext.remove();
+    }
+
+    public RobotMonitor getRobotMonitor() {
+        return robotMonitor;
+    }
+
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Returns the match's metrics, or null if metrics are disabled.
+     */
+    public EngineMetrics getMetrics() {
+        return metrics;
+    }
+
+    public ExecutionBackend getExecutionBackend() {
+        return executionBackend;
+    }
+
+    public IndividualClassLoader.Cache getClassCache() {
+        return classCache;
+    }
+
+    public GenericWorld getGameWorld() {
+        return gameWorld;
+    }
+
+    /**
+     * Notifies the context of what its GameWorld is.  Should be called before the first round of the match.
+     */
+    public void setGameWorld(GenericWorld gw) {
+        gameWorld = gw;
+        mapSeed = gw.getMapSeed();
+        robotMonitor.setGameWorld(gw);
+    }
+
+    /**
+     * Returns the seed used for the default Random constructor in player code.
+     */
+    public long getMapSeed() {
+        return mapSeed;
+    }
+}
@@ -0,0 +1,256 @@
+package battlecode.engine;
+
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * EngineMetrics records timing data for one match: how long each handoff between threads in the Scheduler takes,
+ * how long each robot turn takes and how many bytecodes it uses, and how long the engine spends on its own
+ * bookkeeping each round.  It is only created when the bc.engine.metrics option is set, so a normal run pays nothing
+ * more than a null check.
+ * <p/>
+ * Everything is recorded by whichever thread currently has its turn in the Scheduler, and the Scheduler's handoffs
+ * already order those threads, so none of the methods are synchronized.
+ * <p/>
+ * The class metadata numbers (how many classes were loaded, and how much metaspace or permgen they took, per robot
+ * spawned) are measured for the whole JVM, so they are only meaningful when one match runs at a time.
+ */
+public class EngineMetrics {
+
+    /**
+     * The header line for the CSV written by {@link #writeRounds}.
+     */
+    public static final String ROUNDS_HEADER = "match,round,handoffs,handoff_ns,robot_turns,robot_turn_ns,bytecodes,bookkeeping_ns";
+
+    /**
+     * A histogram of non-negative values (durations, bytecode counts), with one bucket per power of two.
+     */
+    public static class Histogram {
+
+        private final long[] buckets = new long[64];
+        private long count;
+        private long total;
+        private long max;
+
+        public void record(long value) {
+            if (value < 0)
+                value = 0;
+            // values in [2^i, 2^(i+1)) go in bucket i
+            buckets[value == 0 ? 0 : 63 - Long.numberOfLeadingZeros(value)]++;
+            count++;
+            total += value;
+            if (value > max)
+                max = value;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) total / count;
+        }
+
+        /**
+         * Returns an upper bound on the given percentile, i.e., the top of the bucket that the percentile falls in.
+         *
+         * @param percentile a number between 0 and 100
+         */
+        public long getPercentile(double percentile) {
+            long target = (long) Math.ceil(count * percentile / 100.);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= target && seen > 0)
+                    return Math.min(max, i == 63 ? Long.MAX_VALUE : (2L << i) - 1);
+            }
+            return max;
+        }
+
+        public String toString() {
+            return String.format("n=%d mean=%.0f p50<=%d p99<=%d max=%d", count, getMean(), getPercentile(50), getPercentile(99), max);
+        }
+    }
+
+    /**
+     * The totals for a single round.
+     */
+    public static class RoundSample {
+        public final int round;
+        public final long handoffs;
+        public final long handoffNanos;
+        public final long robotTurns;
+        public final long robotTurnNanos;
+        public final long bytecodes;
+        public final long bookkeepingNanos;
+
+        public RoundSample(int round, long handoffs, long handoffNanos, long robotTurns, long robotTurnNanos, long bytecodes, long bookkeepingNanos) {
+            this.round = round;
+            this.handoffs = handoffs;
+            this.handoffNanos = handoffNanos;
+            this.robotTurns = robotTurns;
+            this.robotTurnNanos = robotTurnNanos;
+            this.bytecodes = bytecodes;
+            this.bookkeepingNanos = bookkeepingNanos;
+        }
+    }
+
+    private final Histogram handoffLatency = new Histogram();
+    private final Histogram robotTurnTime = new Histogram();
+    private final Histogram bytecodesPerTurn = new Histogram();
+    private final Histogram bookkeepingTime = new Histogram();
+
+    private final List<RoundSample> rounds = new ArrayList<RoundSample>();
+
+    private long preinstrumentNanos;
+    private int preinstrumentedClasses;
+
+    private final long classesLoadedAtStart = ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount();
+    private final long classMemoryAtStart = classMemoryUsed();
+    private int robotsSpawned;
+
+    // totals for the round in progress
+    private long roundHandoffs, roundHandoffNanos, roundRobotTurns, roundRobotTurnNanos, roundBytecodes, roundBookkeepingNanos;
+
+    /**
+     * Records the time from one thread handing off control to the next thread resuming.
+     */
+    public void recordHandoff(long nanos) {
+        handoffLatency.record(nanos);
+        roundHandoffs++;
+        roundHandoffNanos += nanos;
+    }
+
+    /**
+     * Records a robot turn that took the given time and used the given number of bytecodes.
+     */
+    public void recordRobotTurn(long nanos, int bytecodes) {
+        robotTurnTime.record(nanos);
+        bytecodesPerTurn.record(bytecodes);
+        roundRobotTurns++;
+        roundRobotTurnNanos += nanos;
+        roundBytecodes += bytecodes;
+    }
+
+    /**
+     * Records time that the engine spent on its own work, e.g., processing the beginning or end of a round or
+     * collecting the round's signals.
+     */
+    public void recordBookkeeping(long nanos) {
+        bookkeepingTime.record(nanos);
+        roundBookkeepingNanos += nanos;
+    }
+
+    /**
+     * Records the time spent instrumenting the teams' classes before the match started.
+     */
+    public void recordPreinstrumentation(long nanos, int classes) {
+        preinstrumentNanos += nanos;
+        preinstrumentedClasses += classes;
+    }
+
+    /**
+     * Records that a robot's player was loaded.
+     */
+    public void recordSpawn() {
+        robotsSpawned++;
+    }
+
+    /**
+     * Returns the number of bytes used in the memory pools that hold class metadata (Metaspace on newer JVMs,
+     * the permanent generation on older ones).
+     */
+    public static long classMemoryUsed() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            String name = pool.getName();
+            if (name.contains("Metaspace") || name.contains("Perm Gen"))
+                used += pool.getUsage().getUsed();
+        }
+        return used;
+    }
+
+    /**
+     * Closes the current round's totals and adds them to the time series.
+     */
+    public void endRound(int round) {
+        rounds.add(new RoundSample(round, roundHandoffs, roundHandoffNanos, roundRobotTurns, roundRobotTurnNanos, roundBytecodes, roundBookkeepingNanos));
+        roundHandoffs = roundHandoffNanos = roundRobotTurns = roundRobotTurnNanos = roundBytecodes = roundBookkeepingNanos = 0;
+    }
+
+    public Histogram getHandoffLatency() {
+        return handoffLatency;
+    }
+
+    public Histogram getRobotTurnTime() {
+        return robotTurnTime;
+    }
+
+    public Histogram getBytecodesPerTurn() {
+        return bytecodesPerTurn;
+    }
+
+    public Histogram getBookkeepingTime() {
+        return bookkeepingTime;
+    }
+
+    public long getPreinstrumentNanos() {
+        return preinstrumentNanos;
+    }
+
+    public int getPreinstrumentedClasses() {
+        return preinstrumentedClasses;
+    }
+
+    public int getRobotsSpawned() {
+        return robotsSpawned;
+    }
+
+    public List<RoundSample> getRounds() {
+        return rounds;
+    }
+
+    /**
+     * Returns a human-readable summary of the whole match.  Times are in nanoseconds.
+     */
+    public String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("rounds: ").append(rounds.size()).append('\n');
+        if (preinstrumentedClasses > 0)
+            sb.append("pre-instrumentation (ns): ").append(preinstrumentNanos).append(" for ").append(preinstrumentedClasses).append(" classes\n");
+        sb.append("handoff latency (ns): ").append(handoffLatency).append('\n');
+        sb.append("robot turn time (ns): ").append(robotTurnTime).append('\n');
+        sb.append("bytecodes per turn: ").append(bytecodesPerTurn).append('\n');
+        sb.append("engine bookkeeping (ns): ").append(bookkeepingTime);
+        if (robotsSpawned > 0) {
+            long classes = ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount() - classesLoadedAtStart;
+            long memory = classMemoryUsed() - classMemoryAtStart;
+            sb.append(String.format("\nclass metadata: %d classes, %d bytes for %d robots (%d classes, %d bytes per robot)",
+                    classes, memory, robotsSpawned, classes / robotsSpawned, memory / robotsSpawned));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes the per-round time series as CSV, one line per round.
+     *
+     * @param label a label for the match, written at the start of each line
+     */
+    public void writeRounds(PrintWriter out, String label) {
+        for (RoundSample s : rounds) {
+            out.printf("%s,%d,%d,%d,%d,%d,%d,%d\n", label, s.round, s.handoffs, s.handoffNanos, s.robotTurns, s.robotTurnNanos, s.bytecodes, s.bookkeepingNanos);
+        }
+    }
+
+}
@@ -2,6 +2,7 @@ package battlecode.engine;
 
 import battlecode.engine.instrumenter.IndividualClassLoader;
 import battlecode.engine.instrumenter.InstrumentationException;
+import battlecode.engine.instrumenter.Preinstrumenter;
 import battlecode.engine.scheduler.ScheduledRunnable;
 import battlecode.server.Config;
 
@@ -21,13 +22,37 @@ public class PlayerFactory {
         _debugMethodsEnabled = options.getBoolean("bc.engine.debug-methods");
     }
 
+    /**
+     * Instruments all of a team's classes ahead of time, in parallel, so that loadPlayer doesn't have to.
+     * Errors are reported right away, but only the robots that go on to load a bad class self-destruct.
+     *
+     * @return the number of classes instrumented
+     */
+    public static int preinstrumentPlayer(String teamName) {
+        EngineContext context = EngineContext.current();
+        try {
+            IndividualClassLoader icl = IndividualClassLoader.forRobot(teamName, _debugMethodsEnabled, false, context.getClassCache());
+            Preinstrumenter p = new Preinstrumenter(icl, teamName, Runtime.getRuntime().availableProcessors());
+            p.run();
+            if (p.failed())
+                System.out.println("[Engine] Error during instrumentation of team " + teamName + ".");
+            return p.getClassCount();
+        } catch (InstrumentationException ie) {
+            // the error has been reported, and loadPlayer will run into it again
+            return 0;
+        }
+    }
+
     public static void loadPlayer(GenericController rc, String teamName) {
 
+        EngineContext context = EngineContext.current();
+
         // now, we instantiate and instrument the player's class
         Class playerClass;
+        IndividualClassLoader icl;
         try {
             // The classloaders ignore silenced now - RobotMonitor takes care of it
-            ClassLoader icl = new IndividualClassLoader(teamName, _debugMethodsEnabled, false);
+            icl = IndividualClassLoader.forRobot(teamName, _debugMethodsEnabled, false, context.getClassCache());
             playerClass = icl.loadClass(teamName + ".RobotPlayer");
             //~ System.out.println("PF done loading");
         } catch (InstrumentationException ie) {
@@ -42,7 +67,11 @@ public class PlayerFactory {
         }
 
         // finally, create the player's thread, and let it loose
-        new ScheduledRunnable(new RobotRunnable(playerClass, rc), rc.getRobot().getID());
+        // (it won't run until the current thread's turn ends, so it's fine to set up its bytecode counter afterwards)
+        ScheduledRunnable runnable = new ScheduledRunnable(context, new RobotRunnable(playerClass, rc), rc.getRobot().getID());
+        icl.setRobotData(runnable.getRobotData());
+        if (context.getMetrics() != null)
+            context.getMetrics().recordSpawn();
 
     }
 }
@@ -2,7 +2,9 @@ package battlecode.engine;
 
 import battlecode.common.Clock;
 import battlecode.common.RobotController;
+import battlecode.engine.instrumenter.IndividualClassLoader;
 import battlecode.engine.instrumenter.RobotDeathException;
+import battlecode.engine.instrumenter.RobotMonitor;
 import battlecode.engine.scheduler.Scheduler;
 
 import java.lang.reflect.InvocationTargetException;
@@ -46,7 +48,7 @@ class RobotRunnable implements Runnable {
 
         runbot:
         try {
-            Scheduler.endTurn();
+            EngineContext.current().getScheduler().endTurn();
             try {
                 m = myPlayerClass.getMethod("run", RobotController.class);
             } catch (NoSuchMethodException e) {
@@ -62,6 +64,8 @@ class RobotRunnable implements Runnable {
                 break runbot;
             }
 
+            // the JVM doesn't initialize the class for each robot if the team shares it
+            IndividualClassLoader.initializeStatics(myPlayerClass);
             m.invoke(null, myRobotController);
 
             System.out.println("[Engine] Robot " + myRobotController.getRobot() + " died on round "+Clock.getRoundNum()+" because its run method returned");
@@ -73,6 +77,9 @@ class RobotRunnable implements Runnable {
                 t.printStackTrace();
             }
         }
-        myRobotController.getRobot().suicide();
+        // if the robot was killed, its death has already been processed, and we no longer have the turn
+        RobotMonitor.RobotData data = Scheduler.getOwnRobotData();
+        if (data == null || !data.killed)
+            myRobotController.getRobot().suicide();
     }
 }
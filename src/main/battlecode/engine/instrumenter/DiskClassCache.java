@@ -0,0 +1,323 @@
+package battlecode.engine.instrumenter;
+
+import battlecode.server.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * A cache of instrumented class files on disk, shared by every match that uses the same directory, so that a team
+ * that plays many matches (e.g. in a tournament) is only run through the instrumenter once.  It is turned on by
+ * setting bc.engine.class-cache to a directory.
+ * <p/>
+ * Entries are keyed on a hash of the original class file and everything else the instrumenter's output depends on:
+ * InstrumentingClassLoader.INSTRUMENTER_VERSION, the instrumenter's settings, the contents of MethodCosts.txt,
+ * AllowedPackages.txt and DisallowedClasses.txt, the Java version, and for a team's classes, every class file of the
+ * team, since the way a class is instrumented depends on the team's other classes as well.  So an entry goes stale
+ * only if the instrumenter itself changes without INSTRUMENTER_VERSION being incremented.  Old entries are simply
+ * never read again.
+ * <p/>
+ * The rule files and each team's class files are read once per run, so changing them while a server is running
+ * doesn't change the keys until the server is restarted.
+ * <p/>
+ * Entries are written to a temporary file first and then renamed, so a reader never sees half an entry even if
+ * several servers share the directory.
+ */
+public class DiskClassCache {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    private static File directory;
+    private static boolean checkedSettings;
+
+    // the files that ClassReferenceUtil and MethodCostUtil read the instrumenter's rules from
+    private static final String[] RULE_FILES = {"MethodCosts.txt", "AllowedPackages.txt", "DisallowedClasses.txt"};
+    private static String rulesDigest;
+    private static final Map<String, String> teamDigests = new HashMap<String, String>();
+
+    private DiskClassCache() {
+    }
+
+    private static synchronized File directory() {
+        if (!checkedSettings) {
+            checkedSettings = true;
+            String dir = Config.getGlobalConfig().get("bc.engine.class-cache");
+            if (dir != null && dir.length() > 0) {
+                File f = new File(dir);
+                if (f.isDirectory() || f.mkdirs())
+                    directory = f;
+                else
+                    System.out.println("[Engine] Can't create class cache directory " + dir + ", so classes will not be cached.");
+            }
+        }
+        return directory;
+    }
+
+    /**
+     * Returns true if bc.engine.class-cache is set.
+     */
+    public static boolean isEnabled() {
+        return directory() != null;
+    }
+
+    /**
+     * Returns the number of classes that were found in the cache.
+     */
+    public static long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of classes that had to be instrumented because they weren't in the cache.
+     */
+    public static long getMisses() {
+        return misses.get();
+    }
+
+    public static String getSummary() {
+        return "instrumented class cache: " + hits.get() + " hits, " + misses.get() + " misses";
+    }
+
+    /**
+     * Reads the original class file for the given class from the classpath.
+     *
+     * @param className the name of the class, with slashes, e.g. "java/util/ArrayList"
+     * @return the contents of the class file, or null if there is no such class
+     */
+    static byte[] readOriginal(String className) throws IOException {
+        InputStream in = ClassLoader.getSystemResourceAsStream(className + ".class");
+        if (in == null)
+            return null;
+        try {
+            return readFully(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns a hash of the files the instrumenter reads its rules from.
+     */
+    static synchronized String rulesDigest() {
+        if (rulesDigest == null) {
+            MessageDigest md = sha1();
+            for (String name : RULE_FILES) {
+                md.update(name.getBytes(UTF8));
+                File f = new File(name);
+                try {
+                    FileInputStream in = new FileInputStream(f);
+                    try {
+                        md.update((byte) 1);
+                        md.update(readFully(in));
+                    } finally {
+                        in.close();
+                    }
+                } catch (IOException e) {
+                    // the instrumenter reports the missing file itself
+                    md.update((byte) 0);
+                }
+            }
+            rulesDigest = hex(md.digest());
+        }
+        return rulesDigest;
+    }
+
+    /**
+     * Returns a hash of every class file in the team's package, wherever it is on the classpath, or null if they
+     * can't all be found, in which case the team's classes shouldn't be cached.
+     *
+     * @param teamPackageName the team's package, with slashes
+     */
+    static synchronized String teamDigest(String teamPackageName) {
+        if (teamDigests.containsKey(teamPackageName))
+            return teamDigests.get(teamPackageName);
+        // sorted, so that the order the classpath lists them in doesn't matter
+        Map<String, byte[]> classes = new TreeMap<String, byte[]>();
+        String digest;
+        try {
+            Enumeration<URL> urls = ClassLoader.getSystemResources(teamPackageName);
+            boolean found = urls.hasMoreElements();
+            while (urls.hasMoreElements()) {
+                if (!addTeamClasses(urls.nextElement(), teamPackageName, classes))
+                    found = false;
+            }
+            if (found) {
+                MessageDigest md = sha1();
+                for (Map.Entry<String, byte[]> e : classes.entrySet()) {
+                    md.update(e.getKey().getBytes(UTF8));
+                    md.update((byte) 0);
+                    md.update(e.getValue());
+                }
+                digest = hex(md.digest());
+            } else
+                digest = null;
+        } catch (IOException e) {
+            digest = null;
+        }
+        teamDigests.put(teamPackageName, digest);
+        return digest;
+    }
+
+    // adds the class files under url, which is the team's package in a directory or a jar; returns false if url
+    // is somewhere else
+    private static boolean addTeamClasses(URL url, String teamPackageName, Map<String, byte[]> classes) throws IOException {
+        if (url.getProtocol().equals("file")) {
+            addClassFiles(new File(URLDecoder.decode(url.getPath(), "UTF-8")), teamPackageName, classes);
+            return true;
+        }
+        if (url.getProtocol().equals("jar")) {
+            JarFile jar = ((JarURLConnection) url.openConnection()).getJarFile();
+            String prefix = teamPackageName + "/";
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry e = entries.nextElement();
+                if (e.getName().startsWith(prefix) && e.getName().endsWith(".class") && !classes.containsKey(e.getName())) {
+                    InputStream in = jar.getInputStream(e);
+                    try {
+                        classes.put(e.getName(), readFully(in));
+                    } finally {
+                        in.close();
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static void addClassFiles(File dir, String path, Map<String, byte[]> classes) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null)
+            return;
+        for (File f : files) {
+            String name = path + "/" + f.getName();
+            if (f.isDirectory())
+                addClassFiles(f, name, classes);
+            // a class that is in more than one place on the classpath is loaded from the first
+            else if (name.endsWith(".class") && !classes.containsKey(name)) {
+                FileInputStream in = new FileInputStream(f);
+                try {
+                    classes.put(name, readFully(in));
+                } finally {
+                    in.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the cache key for an instrumented class.
+     *
+     * @param original the original class file
+     * @param settings everything else that affects the instrumented class, e.g. the team name and the instrumenter's
+     *                 settings
+     */
+    static String key(byte[] original, String settings) {
+        MessageDigest md = sha1();
+        md.update(original);
+        md.update(settings.getBytes(UTF8));
+        return hex(md.digest());
+    }
+
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM is required to support SHA-1
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes)
+            sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+
+    /**
+     * Looks up an instrumented class.
+     *
+     * @return the instrumented class file, or null if it isn't in the cache
+     */
+    static byte[] get(String key) {
+        File dir = directory();
+        if (dir == null)
+            return null;
+        File f = new File(dir, key + ".class");
+        if (f.isFile()) {
+            try {
+                FileInputStream in = new FileInputStream(f);
+                try {
+                    byte[] bytes = readFully(in);
+                    hits.incrementAndGet();
+                    return bytes;
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                // treat it as a miss, and overwrite it
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Adds an instrumented class to the cache.  Failures are ignored, since the class can always be instrumented
+     * again.
+     */
+    static void put(String key, byte[] instrumented) {
+        File dir = directory();
+        if (dir == null)
+            return;
+        File tmp = null;
+        try {
+            tmp = File.createTempFile(key, ".tmp", dir);
+            FileOutputStream out = new FileOutputStream(tmp);
+            try {
+                out.write(instrumented);
+            } finally {
+                out.close();
+            }
+            File f = new File(dir, key + ".class");
+            if (!tmp.renameTo(f) && !f.isFile())
+                tmp.delete();
+        } catch (IOException e) {
+            if (tmp != null)
+                tmp.delete();
+        }
+        if (tmp != null && tmp.exists())
+            tmp.delete();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) > 0)
+            out.write(buf, 0, n);
+        return out.toByteArray();
+    }
+
+}
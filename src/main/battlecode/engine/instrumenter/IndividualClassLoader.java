@@ -13,27 +13,54 @@ public class IndividualClassLoader extends InstrumentingClassLoader {
 
     private final static String[] disallowedPlayerPackages = {"java/", "battlecode/", "sun/"};
 
-    // caches the binary format of classes that have been instrumented
-    // the values are byte arrays, not Classes, because each instance of InstrumentingClassLoader should define its own class,
-    // even if another InstrumentingClassLoader has already loaded a class from the same class file
-    private final static Map<String, byte[]> instrumentedClasses = new HashMap<String, byte[]>();
+    /**
+     * The state shared by all the IndividualClassLoaders of one match.  Each match has its own Cache
+     * (see {@link battlecode.engine.EngineContext}), so nothing carries over from one match to the next
+     * and matches running at the same time don't need to lock each other out.
+     */
+    public static class Cache {
 
-    // caches the names of teams with errors, so that if a class is loaded for that team, it immediately throws an exception
-    private final static Set<String> teamsWithErrors = Collections.newSetFromMap(new IdentityHashMap<String, Boolean>());
+        // caches the binary format of classes that have been instrumented
+        // the values are byte arrays, not Classes, because each instance of InstrumentingClassLoader should define its own class,
+        // even if another InstrumentingClassLoader has already loaded a class from the same class file
+        private final Map<String, byte[]> instrumentedClasses = new HashMap<String, byte[]>();
+
+        // caches the names of teams with errors, so that if a class is loaded for that team, it immediately throws an exception
+        private final Set<String> teamsWithErrors = Collections.newSetFromMap(new IdentityHashMap<String, Boolean>());
+
+        private final SingletonClassLoader singletonLoader = new SingletonClassLoader();
+
+        // the loaders for the library classes that each team's robots share
+        private final Map<String, TeamClassLoader> teamLoaders = new HashMap<String, TeamClassLoader>();
+
+        // each team's only loader, when bc.engine.shared-team-loader is set
+        private final Map<String, IndividualClassLoader> sharedLoaders = new HashMap<String, IndividualClassLoader>();
+
+    }
 
     // the name of the team this InstrumentingClassLoader is loading
     private final String teamPackageName;
 
-    public static void reset() {
-        instrumentedClasses.clear();
-        teamsWithErrors.clear();
-        singletonLoader = new SingletonClassLoader();
+    private final Map<String, byte[]> instrumentedClasses;
+    private final Set<String> teamsWithErrors;
+    private final SingletonClassLoader singletonLoader;
+    private final Cache cache;
+    // the loader for the library classes this team shares, or null if they aren't shared
+    private final TeamClassLoader teamLoader;
+    // moves static fields into per-robot storage if this is the only loader for its team, otherwise null
+    private final PerRobotStatics statics;
+
+    public IndividualClassLoader(String teamPackageName, boolean debugMethodsEnabled, boolean silenced) throws InstrumentationException {
+        this(teamPackageName, debugMethodsEnabled, silenced, new Cache());
     }
 
-    static SingletonClassLoader singletonLoader = new SingletonClassLoader();
+    public IndividualClassLoader(String teamPackageName, boolean debugMethodsEnabled, boolean silenced, Cache cache) throws InstrumentationException {
+        super(silenced, debugMethodsEnabled, cache.singletonLoader);
 
-    public IndividualClassLoader(String teamPackageName, boolean debugMethodsEnabled, boolean silenced) throws InstrumentationException {
-        super(silenced, debugMethodsEnabled, singletonLoader);
+        this.cache = cache;
+        this.instrumentedClasses = cache.instrumentedClasses;
+        this.teamsWithErrors = cache.teamsWithErrors;
+        this.singletonLoader = cache.singletonLoader;
 
         checkSettings();
 
@@ -48,6 +75,46 @@ public class IndividualClassLoader extends InstrumentingClassLoader {
 
         this.teamPackageName = teamPackageName.intern();
 
+        if (sharedTeamLoader())
+            statics = new PerRobotStatics(this.teamPackageName, debugMethodsEnabled, silenced);
+        else
+            statics = null;
+
+        // a loader that is shared by the whole team already shares every class
+        if (shareLibraryClasses() && statics == null) {
+            synchronized (cache) {
+                TeamClassLoader tl = cache.teamLoaders.get(this.teamPackageName);
+                if (tl == null) {
+                    tl = new TeamClassLoader(this.teamPackageName, debugMethodsEnabled, singletonLoader, cache, instrumentedClasses);
+                    cache.teamLoaders.put(this.teamPackageName, tl);
+                }
+                teamLoader = tl;
+            }
+        } else
+            teamLoader = null;
+
+    }
+
+    /**
+     * Returns a loader for one of a team's robots: a new one, or if bc.engine.shared-team-loader is set, the one
+     * loader that all of the team's robots share.
+     */
+    public static IndividualClassLoader forRobot(String teamPackageName, boolean debugMethodsEnabled, boolean silenced, Cache cache) throws InstrumentationException {
+        checkSettings();
+        if (!sharedTeamLoader())
+            return new IndividualClassLoader(teamPackageName, debugMethodsEnabled, silenced, cache);
+        synchronized (cache) {
+            IndividualClassLoader loader = cache.sharedLoaders.get(teamPackageName);
+            if (loader == null) {
+                loader = new IndividualClassLoader(teamPackageName, debugMethodsEnabled, silenced, cache);
+                cache.sharedLoaders.put(teamPackageName, loader);
+            }
+            return loader;
+        }
+    }
+
+    protected PerRobotStatics perRobotStatics() {
+        return statics;
     }
 
     private void dumpToFile(String name, byte[] bytes) {
@@ -62,7 +129,7 @@ public class IndividualClassLoader extends InstrumentingClassLoader {
 
     protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
 
-        synchronized (teamPackageName) {
+        synchronized (cache) {
 
             // check if the team we're loading already has errors
             if (teamsWithErrors.contains(teamPackageName))
@@ -71,18 +138,43 @@ public class IndividualClassLoader extends InstrumentingClassLoader {
             name = name.replace('.', '/');
 
             // this is the class we'll return
-            Class finishedClass = null;
+            Class finishedClass = findLoadedClass(name.replace('/', '.'));
 
             //System.out.println("loadClass "+name);
 
-            if (instrumentedClasses.containsKey(name)) {
+            // library classes without static state are defined once for the whole team
+            if (finishedClass == null && teamLoader != null && name.startsWith("instrumented/")) {
+                try {
+                    finishedClass = teamLoader.loadShared(name);
+                } catch (InstrumentationException ie) {
+                    teamsWithErrors.add(teamPackageName);
+                    throw ie;
+                }
+            }
+
+            if (finishedClass != null) {
+                // already defined by this loader or the team's loader
+            } else if (statics != null && statics.isHolder(name)) {
+                // holders have to be generated for each loader, since each loader numbers them itself
+                byte[] classBytes;
+                try {
+                    classBytes = statics.holderBytes(name);
+                } catch (InstrumentationException ie) {
+                    teamsWithErrors.add(teamPackageName);
+                    throw ie;
+                }
+                finishedClass = defineClass(null, classBytes, 0, classBytes.length);
+            } else if (instrumentedClasses.containsKey(name)) {
                 byte[] classBytes = instrumentedClasses.get(name);
                 finishedClass = defineClass(null, classBytes, 0, classBytes.length);
-            } else if (name.equals("battlecode/engine/instrumenter/lang/ObjectHashCode") ||
-                    name.equals("battlecode/engine/instrumenter/lang/InstrumentableFunctions")) {
+            } else if (name.equals("battlecode/engine/instrumenter/lang/BytecodeCounter") || name.equals("battlecode/engine/instrumenter/lang/RobotStatics")
+                    || name.equals("battlecode/engine/instrumenter/lang/ObjectHashCode")) {
                 // We want each robot to have its own copy of this class
-                // so that it isn't possible to send messages by calling
-                // hashCode repeatedly.  But we don't want to instrument it.
+                // so that it can find the robot's RobotData without
+                // looking it up.  But we don't want to instrument it.
+                // (RobotStatics and ObjectHashCode go through
+                // BytecodeCounter; RobotStatics is only used when the
+                // whole team shares one loader.)
                 ClassReader cr = null;
                 try {
                     cr = new ClassReader(name);
@@ -105,10 +197,9 @@ public class IndividualClassLoader extends InstrumentingClassLoader {
 
                 finishedClass = saveAndDefineClass(name, classBytes);
             }
-            // Each robot has its own version of java.util classes.
-            // If permgen space becomes a problem, we could make it so
-            // that only one copy of these classes is loaded, but
-            // we would need to modify ObjectHashCode.
+            // Library classes with static state get a separate copy
+            // for each robot, so that robots can't use the state to
+            // talk to each other.
             else if (name.startsWith("instrumented")) {
                 byte[] classBytes;
                 try {
@@ -139,6 +230,60 @@ public class IndividualClassLoader extends InstrumentingClassLoader {
         }
     }
 
+    /**
+     * Returns true if the given class has already been instrumented for this match.
+     */
+    boolean isInstrumented(String name) {
+        synchronized (cache) {
+            return instrumentedClasses.containsKey(name);
+        }
+    }
+
+    /**
+     * Stores an instrumented class, so that every loader in the match can define it without instrumenting it again.
+     */
+    void addInstrumentedClass(String name, byte[] classBytes) {
+        synchronized (cache) {
+            instrumentedClasses.put(name, classBytes);
+        }
+    }
+
+    /**
+     * Points this loader's copy of BytecodeCounter at the given robot's RobotData, so that the robot's code
+     * can count its bytecodes without going through RobotMonitor.  Should be called before the robot first runs.
+     */
+    public void setRobotData(RobotMonitor.RobotData data) {
+        try {
+            java.lang.reflect.Field field = loadClass("battlecode.engine.instrumenter.lang.BytecodeCounter").getField("data");
+            // if the whole team shares the class, the RobotMonitor points it at each robot in turn
+            if (statics != null)
+                data.sharedCounterData = field;
+            // so does the copy that the team's shared library classes use
+            else if (teamLoader != null)
+                data.sharedCounterData = teamLoader.counterData();
+            field.set(null, data);
+        } catch (Exception e) {
+            // the robot will still count its bytecodes correctly, just more slowly
+            ErrorReporter.report(e);
+        }
+    }
+
+    /**
+     * Initializes the running robot's copy of the static state of a class that the engine is about to call into,
+     * e.g. RobotPlayer, if the class was loaded by a loader that the whole team shares.  Otherwise the JVM has
+     * already taken care of it.
+     */
+    public static void initializeStatics(Class<?> c) throws Exception {
+        if (!(c.getClassLoader() instanceof IndividualClassLoader))
+            return;
+        IndividualClassLoader loader = (IndividualClassLoader) c.getClassLoader();
+        if (loader.statics == null)
+            return;
+        String holder = loader.statics.holderFor(c.getName().replace('.', '/'));
+        if (holder != null)
+            loader.loadClass(holder).getMethod("get").invoke(null);
+    }
+
     public Class<?> saveAndDefineClass(String name, byte[] classBytes) {
         if (classBytes == null) {
             ErrorReporter.report("Can't find instrumented class " + name + ", but no errors reported", true);
@@ -12,12 +12,22 @@ import static org.objectweb.asm.ClassWriter.COMPUTE_MAXS;
 
 public abstract class InstrumentingClassLoader extends ClassLoader {
 
+    /**
+     * The version of the instrumenter, which is part of the key of every class in the DiskClassCache.  Increment it
+     * whenever a change to the instrumenter changes the classes it produces.
+     */
+    public static final int INSTRUMENTER_VERSION = 2;
+
     // silenced is not used any more
     protected final boolean silenced;
     protected final boolean debugMethodsEnabled;
 
     private static boolean lazy;
     private static boolean fastHash;
+    private static boolean superblocks;
+    private static boolean verifyAccounting;
+    private static boolean shareLibraryClasses;
+    private static boolean sharedTeamLoader;
     private static boolean checkedSettings;
 
     /**
@@ -52,12 +62,63 @@ public abstract class InstrumentingClassLoader extends ClassLoader {
         return fastHash;
     }
 
+    /**
+     * Returns the value of the property bc.engine.superblocks.
+     * If superblocks are on, the instrumenter charges straight-line chains of basic blocks
+     * in one go, and charges simple counted loops once, before they start, wherever
+     * that can't change what a robot is charged.
+     * <p/>
+     * {@see RoboMethodTree#analyzeBlocks}
+     */
+    public static boolean superblocks() {
+        return superblocks;
+    }
+
+    /**
+     * Returns the value of the property bc.engine.verify-accounting.
+     * If it is set, instrumented code also does the old per-basic-block accounting on
+     * the side, and reports an error whenever the two disagree.
+     * <p/>
+     * {@see battlecode.engine.instrumenter.lang.BytecodeCounter#verify}
+     */
+    public static boolean verifyAccounting() {
+        return verifyAccounting;
+    }
+
+    /**
+     * Returns the value of the property bc.engine.share-library-classes.
+     * If it is set, instrumented library classes that have no static state are
+     * defined once for each team instead of once for each robot.  It is off by
+     * default until the metaspace saved per robot has been measured.
+     * <p/>
+     * {@see TeamClassLoader}
+     */
+    public static boolean shareLibraryClasses() {
+        return shareLibraryClasses;
+    }
+
+    /**
+     * Returns the value of the property bc.engine.shared-team-loader.
+     * If it is set, each team has a single IndividualClassLoader that defines every one
+     * of its classes once, and the instrumenter moves static fields into storage that
+     * belongs to each robot.
+     * <p/>
+     * {@see PerRobotStatics}
+     */
+    public static boolean sharedTeamLoader() {
+        return sharedTeamLoader;
+    }
+
     protected static void checkSettings() {
         if (!checkedSettings) {
             checkedSettings = true;
             Config config = Config.getGlobalConfig();
             lazy = config.getBoolean("bc.engine.lazy-instrumenter");
             fastHash = config.getBoolean("bc.engine.fast-hash");
+            superblocks = config.getBoolean("bc.engine.superblocks");
+            verifyAccounting = config.getBoolean("bc.engine.verify-accounting");
+            shareLibraryClasses = config.getBoolean("bc.engine.share-library-classes");
+            sharedTeamLoader = config.getBoolean("bc.engine.shared-team-loader");
         }
     }
 
@@ -75,23 +136,66 @@ public abstract class InstrumentingClassLoader extends ClassLoader {
 
     public byte[] instrument(String className, boolean checkDisallowed, String teamPackageName) throws InstrumentationException {
         //System.out.println("instrumenting "+className+", checkDisallowed "+checkDisallowed);
-        ClassReader cr;
+        byte[] original;
         try {
             if (className.startsWith("instrumented/"))
-                cr = new ClassReader(className.substring(13));
+                original = DiskClassCache.readOriginal(className.substring(13));
             else
-                cr = new ClassReader(className);
+                original = DiskClassCache.readOriginal(className);
         } catch (IOException ioe) {
+            original = null;
+        }
+        if (original == null) {
             ErrorReporter.report("Can't find the class \"" + className + "\"", "Make sure the team name is spelled correctly.\nMake sure the .class files are in the right directory (teams/teamname/*.class)");
             throw new InstrumentationException();
         }
+        String cacheKey = null;
+        String settings = DiskClassCache.isEnabled() ? cacheSettings(className, checkDisallowed, teamPackageName) : null;
+        if (settings != null) {
+            cacheKey = DiskClassCache.key(original, settings);
+            byte[] cached = DiskClassCache.get(cacheKey);
+            if (cached != null)
+                return cached;
+        }
+        ClassReader cr = new ClassReader(original);
         ClassWriter cw = new ClassWriter(COMPUTE_MAXS); // passing true sets maxLocals and maxStack, so we don't have to
-        ClassVisitor cv = new RoboAdapter(cw, teamPackageName, debugMethodsEnabled, silenced, checkDisallowed);
+        ClassVisitor cv = new RoboAdapter(cw, teamPackageName, debugMethodsEnabled, silenced, checkDisallowed, perRobotStatics());
         cr.accept(cv, 0);        //passing false lets debug info be included in the transformation, so players get line numbers in stack traces
         byte[] bytes = cw.toByteArray();
+        if (cacheKey != null)
+            DiskClassCache.put(cacheKey, bytes);
         return bytes;
     }
 
+    /**
+     * Returns a string describing everything besides the original class file that changes how a class is
+     * instrumented, or null if that can't be worked out, in which case the class shouldn't be cached.
+     */
+    private String cacheSettings(String className, boolean checkDisallowed, String teamPackageName) {
+        String settings = INSTRUMENTER_VERSION + ";" + className + ";" + teamPackageName + ";" + checkDisallowed + ";" + silenced
+                + ";" + debugMethodsEnabled + ";" + lazy + ";" + fastHash + ";" + superblocks + ";" + verifyAccounting + ";" + (perRobotStatics() != null)
+                + ";" + DiskClassCache.rulesDigest()
+                // method costs depend on the class hierarchy, which for library classes is the JDK's
+                + ";" + java.lang.System.getProperty("java.version");
+        // a team's class depends on the team's other classes too: method costs depend on its superclasses, and
+        // PerRobotStatics rewrites its accesses to other classes' static fields
+        if (perRobotStatics() != null || className.startsWith(teamPackageName + "/")) {
+            String team = DiskClassCache.teamDigest(teamPackageName);
+            if (team == null)
+                return null;
+            settings += ";" + team;
+        }
+        return settings;
+    }
+
+    /**
+     * Returns the object that moves static fields into per-robot storage for this loader's classes, or null if
+     * they should be left alone.
+     */
+    protected PerRobotStatics perRobotStatics() {
+        return null;
+    }
+
     public abstract Class<?> saveAndDefineClass(String name, byte[] classBytes);
 
 }
@@ -10,6 +10,7 @@ import java.io.InputStreamReader;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.objectweb.asm.ClassReader.SKIP_DEBUG;
 
@@ -31,6 +32,7 @@ public class MethodCostUtil {
 
     /**
      * This is a map from binary class names, to all the classes/interfaces that the class transitively implements/extends.
+     * It is shared by all the matches running in this JVM, so it has to be safe for concurrent access.
      */
     private final static Map<String, String[]> interfacesMap;
 
@@ -65,7 +67,7 @@ public class MethodCostUtil {
             ClassReferenceUtil.fileLoadError("MethodCosts.txt");
         }
 
-        interfacesMap = new HashMap<String, String[]>();
+        interfacesMap = new ConcurrentHashMap<String, String[]>();
     }
 
     public static MethodData getMethodDataRaw(String fullName) {
@@ -86,10 +88,8 @@ public class MethodCostUtil {
         if (methodCosts.containsKey(key))
             return methodCosts.get(key);
 
-        String[] interfaces = null;
-        if (interfacesMap.containsKey(className))
-            interfaces = interfacesMap.get(className);
-        else {
+        String[] interfaces = interfacesMap.get(className);
+        if (interfaces == null) {
             ClassReader cr;
             try {
                 cr = new ClassReader(className);
@@ -0,0 +1,317 @@
+package battlecode.engine.instrumenter;
+
+import battlecode.engine.ErrorReporter;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.FrameNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gives each robot its own static fields when all the robots on a team share one IndividualClassLoader (see
+ * bc.engine.shared-team-loader), so that robots still can't use static fields to talk to each other.
+ * <p/>
+ * The static fields of each of the team's classes, and of each instrumented library class, are moved into a
+ * generated holder class, C$$BcStatics, and each robot gets its own instance of the holder, which it finds through
+ * lang.RobotStatics.  The instrumenter turns GETSTATIC C.f into a call to C$$BcStatics.get() followed by GETFIELD,
+ * and renames C's static initializer to CLINIT; get() runs it the first time each robot touches C, so each robot
+ * initializes its own copy of C's static state, in the same order the JVM would.  Static fields that have a
+ * constant value can't be changed, so they are left where they are.
+ * <p/>
+ * The JVM caches some things about enums in their Class objects, e.g. for Enum.valueOf, so enums can't have a
+ * copy of their constants for each robot.  Instead enums keep their static fields, and have to be immutable: the
+ * instrumenter refuses enums that have any other static state, or instance fields that aren't final primitives or
+ * Strings.
+ */
+class PerRobotStatics implements Opcodes {
+
+    static final String HOLDER_SUFFIX = "$$BcStatics";
+    static final String CLINIT = "__bc$clinit";
+
+    private static final String ROBOT_STATICS = "battlecode/engine/instrumenter/lang/RobotStatics";
+
+    /**
+     * What PerRobotStatics needs to know about one of the classes whose static fields it might move.
+     */
+    private static class ClassInfo {
+        String superName;
+        String[] interfaces;
+        boolean isInterface;
+        // false for enums
+        boolean moved;
+        boolean hasClinit;
+        // the names of all the static fields the class declares
+        final List<String> staticFields = new ArrayList<String>();
+        // the moved static fields, and their instrumented descriptors
+        final Map<String, String> movedFields = new LinkedHashMap<String, String>();
+        // the instance fields that make an enum mutable
+        final List<String> mutableFields = new ArrayList<String>();
+    }
+
+    // stands for a class that isn't ours, or doesn't exist
+    private static final ClassInfo NONE = new ClassInfo();
+
+    private final String teamPackageName;
+    private final boolean debugMethodsEnabled;
+    private final boolean silenced;
+
+    private final Map<String, ClassInfo> infos = new HashMap<String, ClassInfo>();
+    // each holder's index into a robot's RobotData.statics
+    private final Map<String, Integer> holderIndexes = new HashMap<String, Integer>();
+
+    PerRobotStatics(String teamPackageName, boolean debugMethodsEnabled, boolean silenced) {
+        this.teamPackageName = teamPackageName;
+        this.debugMethodsEnabled = debugMethodsEnabled;
+        this.silenced = silenced;
+    }
+
+    private boolean isTeamClass(String name) {
+        return name.startsWith(teamPackageName + "/");
+    }
+
+    /**
+     * Returns the class that declares the given static field, if the field has been moved into per-robot storage,
+     * or null otherwise.  Fields are looked up in the class, then its interfaces, then its superclass, like the JVM
+     * does.
+     *
+     * @param owner the instrumented name of the class that the field was accessed through
+     */
+    synchronized String declaringClass(String owner, String field) {
+        ClassInfo info = info(owner);
+        if (info == NONE)
+            return null;
+        if (info.staticFields.contains(field))
+            return info.movedFields.containsKey(field) ? owner : null;
+        for (String i : info.interfaces) {
+            String d = declaringClass(i, field);
+            if (d != null)
+                return d;
+        }
+        return info.superName == null ? null : declaringClass(info.superName, field);
+    }
+
+    /**
+     * Returns the name of the holder class that has to be initialized before a robot uses the given class, or null
+     * if there isn't one.  That is the class's own holder, or if it doesn't need one, the nearest superclass's.
+     */
+    synchronized String holderFor(String name) {
+        while (name != null) {
+            ClassInfo info = info(name);
+            if (info == NONE)
+                return null;
+            if (needsHolder(info))
+                return name + HOLDER_SUFFIX;
+            name = info.superName;
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if the given name is that of a holder class.
+     */
+    synchronized boolean isHolder(String name) {
+        if (!name.endsWith(HOLDER_SUFFIX))
+            return false;
+        String owner = name.substring(0, name.length() - HOLDER_SUFFIX.length());
+        return needsHolder(info(owner));
+    }
+
+    private static boolean needsHolder(ClassInfo info) {
+        return info.moved && (info.hasClinit || !info.movedFields.isEmpty());
+    }
+
+    /**
+     * Reports an error and throws an InstrumentationException if the given enum has state that robots could use to
+     * talk to each other.
+     */
+    synchronized void checkEnum(String name) {
+        ClassInfo info = info(name);
+        if (info.mutableFields.isEmpty())
+            return;
+        ErrorReporter.report("Enum " + name.replace('/', '.') + " has fields that robots could use to talk to each other: " + info.mutableFields,
+                "When bc.engine.shared-team-loader is set, every robot on a team shares the same enum constants, so\nenums may only have instance fields that are final primitives or Strings, and no static fields\nbesides their constants.");
+        throw new InstrumentationException();
+    }
+
+    /**
+     * Generates a holder class.
+     *
+     * @param name the name of the holder class, which must satisfy isHolder
+     */
+    synchronized byte[] holderBytes(String name) {
+        String owner = name.substring(0, name.length() - HOLDER_SUFFIX.length());
+        ClassInfo info = info(owner);
+        Integer index = holderIndexes.get(owner);
+        if (index == null) {
+            index = holderIndexes.size();
+            holderIndexes.put(owner, index);
+        }
+        String desc = "L" + name + ";";
+        String superHolder = info.superName == null ? null : holderFor(info.superName);
+
+        // a Java 5 class file, so that it doesn't need stack map frames
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V1_5, ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC, name, null, "java/lang/Object", null);
+        for (Map.Entry<String, String> f : info.movedFields.entrySet())
+            cw.visitField(ACC_PUBLIC, f.getKey(), f.getValue(), null, null).visitEnd();
+
+        MethodVisitor mv = cw.visitMethod(ACC_PRIVATE, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V");
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        // public static C$$BcStatics get() { Object s = RobotStatics.get(index); if (s == null) s = init(); return (C$$BcStatics) s; }
+        mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "get", "()" + desc, null, null);
+        mv.visitCode();
+        mv.visitLdcInsn(index);
+        mv.visitMethodInsn(INVOKESTATIC, ROBOT_STATICS, "get", "(I)Ljava/lang/Object;");
+        mv.visitInsn(DUP);
+        Label done = new Label();
+        mv.visitJumpInsn(IFNONNULL, done);
+        mv.visitInsn(POP);
+        mv.visitMethodInsn(INVOKESTATIC, name, "init", "()Ljava/lang/Object;");
+        mv.visitLabel(done);
+        mv.visitTypeInsn(CHECKCAST, name);
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        // the superclass first, then register the holder before running the initializer, so that the initializer
+        // (and anything it calls) sees the half-initialized state, like it would in the JVM
+        mv = cw.visitMethod(ACC_PRIVATE | ACC_STATIC, "init", "()Ljava/lang/Object;", null, null);
+        mv.visitCode();
+        if (superHolder != null) {
+            mv.visitMethodInsn(INVOKESTATIC, superHolder, "get", "()L" + superHolder + ";");
+            mv.visitInsn(POP);
+        }
+        mv.visitTypeInsn(NEW, name);
+        mv.visitInsn(DUP);
+        mv.visitMethodInsn(INVOKESPECIAL, name, "<init>", "()V");
+        mv.visitInsn(DUP);
+        mv.visitLdcInsn(index);
+        mv.visitInsn(SWAP);
+        mv.visitMethodInsn(INVOKESTATIC, ROBOT_STATICS, "put", "(ILjava/lang/Object;)V");
+        if (info.hasClinit) {
+            if (info.isInterface)
+                mv.visitMethodInsn(INVOKESTATIC, name, "clinit", "()V");
+            else
+                mv.visitMethodInsn(INVOKESTATIC, owner, CLINIT, "()V");
+        }
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        if (info.isInterface && info.hasClinit) {
+            MethodNode clinit = interfaceClinit(owner);
+            clinit.name = "clinit";
+            clinit.access = ACC_PRIVATE | ACC_STATIC;
+            clinit.accept(cw);
+        }
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * Instruments an interface's static initializer on its own.  The interface itself can't keep it, since
+     * interfaces can't have static methods besides their initializers until Java 8.
+     */
+    private MethodNode interfaceClinit(String name) {
+        boolean team = isTeamClass(name);
+        ClassNode cn = new ClassNode();
+        new ClassReader(original(name)).accept(new RoboAdapter(cn, teamPackageName, debugMethodsEnabled, silenced, team, this).keepInterfaceClinit(), 0);
+        for (Object o : cn.methods) {
+            MethodNode m = (MethodNode) o;
+            if (m.name.equals(CLINIT)) {
+                // the holder is an old class file, so it has no use for frames
+                for (AbstractInsnNode n : m.instructions.toArray()) {
+                    if (n instanceof FrameNode)
+                        m.instructions.remove(n);
+                }
+                return m;
+            }
+        }
+        throw new IllegalStateException("no static initializer in " + name);
+    }
+
+    private byte[] original(String name) {
+        try {
+            byte[] b = DiskClassCache.readOriginal(name.startsWith("instrumented/") ? name.substring(13) : name);
+            if (b != null)
+                return b;
+        } catch (IOException e) {
+            // reported below
+        }
+        ErrorReporter.report("Can't find the class \"" + name + "\"", "Make sure the team name is spelled correctly.\nMake sure the .class files are in the right directory (teams/teamname/*.class)");
+        throw new InstrumentationException();
+    }
+
+    private ClassInfo info(String name) {
+        ClassInfo info = infos.get(name);
+        if (info != null)
+            return info;
+        boolean team = isTeamClass(name);
+        if (!team && !name.startsWith("instrumented/")) {
+            infos.put(name, NONE);
+            return NONE;
+        }
+        byte[] bytes;
+        try {
+            bytes = DiskClassCache.readOriginal(team ? name : name.substring(13));
+        } catch (IOException e) {
+            bytes = null;
+        }
+        if (bytes == null) {
+            // loading the class will fail anyway
+            infos.put(name, NONE);
+            return NONE;
+        }
+        ClassNode cn = new ClassNode();
+        new ClassReader(bytes).accept(cn, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        info = new ClassInfo();
+        info.superName = cn.superName == null ? null : ClassReferenceUtil.classReference(cn.superName, teamPackageName, silenced, false);
+        info.interfaces = new String[cn.interfaces.size()];
+        for (int i = 0; i < info.interfaces.length; i++)
+            info.interfaces[i] = ClassReferenceUtil.classReference((String) cn.interfaces.get(i), teamPackageName, silenced, false);
+        info.isInterface = (cn.access & ACC_INTERFACE) != 0;
+        info.moved = (cn.access & ACC_ENUM) == 0;
+        for (Object o : cn.methods) {
+            if (((MethodNode) o).name.equals("<clinit>"))
+                info.hasClinit = true;
+        }
+        for (Object o : cn.fields) {
+            FieldNode f = (FieldNode) o;
+            if ((f.access & ACC_STATIC) != 0) {
+                info.staticFields.add(f.name);
+                if (f.value != null)
+                    continue;
+                if (info.moved)
+                    info.movedFields.put(f.name, ClassReferenceUtil.classDescReference(f.desc, teamPackageName, silenced, team));
+                else if ((f.access & (ACC_ENUM | ACC_SYNTHETIC)) == 0)
+                    info.mutableFields.add(f.name);
+            } else if (!info.moved) {
+                char kind = f.desc.charAt(0);
+                if ((f.access & ACC_FINAL) == 0 || ((kind == 'L' || kind == '[') && !f.desc.equals("Ljava/lang/String;")))
+                    info.mutableFields.add(f.name);
+            }
+        }
+        infos.put(name, info);
+        return info;
+    }
+
+}
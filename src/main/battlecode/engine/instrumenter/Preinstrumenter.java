@@ -0,0 +1,252 @@
+package battlecode.engine.instrumenter;
+
+import battlecode.engine.ErrorReporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Instruments every class in a team's package, and every instrumented library class that those classes refer to,
+ * before the match starts, so that robots don't have to wait for the instrumenter during their first turns.  The
+ * classes are instrumented in parallel, and the results go into the match's IndividualClassLoader.Cache, where
+ * each robot's IndividualClassLoader finds them.
+ * <p/>
+ * Every error in the team's own classes is reported up front, but only a robot that actually loads a bad class
+ * fails, just as without preinstrumenting, since the team may never use the class.  Classes that fail aren't
+ * stored, so loading them runs into the error again.  Errors in library classes are left for the robots to run
+ * into.
+ */
+public class Preinstrumenter {
+
+    private static class Result {
+        final String name;
+        final byte[] bytes;
+
+        Result(String name, byte[] bytes) {
+            this.name = name;
+            this.bytes = bytes;
+        }
+    }
+
+    private final IndividualClassLoader loader;
+    private final String teamPackageName;
+    private final int threads;
+
+    private int classCount;
+    private boolean failed;
+
+    /**
+     * @param loader  a loader for the team, which is used to instrument the classes and to store the results
+     * @param threads the number of classes to instrument at once
+     */
+    public Preinstrumenter(IndividualClassLoader loader, String teamPackageName, int threads) {
+        this.loader = loader;
+        this.teamPackageName = teamPackageName.replace('.', '/');
+        this.threads = threads;
+    }
+
+    /**
+     * Returns the number of classes instrumented by the last call to run.
+     */
+    public int getClassCount() {
+        return classCount;
+    }
+
+    /**
+     * Returns true if any of the team's own classes could not be instrumented.
+     */
+    public boolean failed() {
+        return failed;
+    }
+
+    /**
+     * Instruments the team's classes, and waits for them to be done.
+     */
+    public void run() {
+        classCount = 0;
+        failed = false;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            CompletionService<Result> done = new ExecutorCompletionService<Result>(pool);
+            Set<String> seen = new HashSet<String>();
+            int outstanding = 0;
+            for (String name : findTeamClasses()) {
+                seen.add(name);
+                if (submit(done, name))
+                    outstanding++;
+            }
+            while (outstanding > 0) {
+                Result r;
+                try {
+                    r = done.take().get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException e) {
+                    ErrorReporter.report(e.getCause(), true);
+                    failed = true;
+                    outstanding--;
+                    continue;
+                }
+                outstanding--;
+                boolean ours = r.name.startsWith(teamPackageName);
+                if (r.bytes == null) {
+                    if (ours)
+                        failed = true;
+                    continue;
+                }
+                loader.addInstrumentedClass(r.name, r.bytes);
+                classCount++;
+                // only the library classes that the team refers to directly, not everything they refer to
+                if (ours) {
+                    for (String ref : referencedInstrumentedClasses(r.bytes)) {
+                        if (seen.add(ref) && submit(done, ref))
+                            outstanding++;
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private boolean submit(CompletionService<Result> done, final String name) {
+        if (loader.isInstrumented(name))
+            return false;
+        done.submit(new Callable<Result>() {
+            public Result call() {
+                try {
+                    return new Result(name, loader.instrument(name, name.startsWith(teamPackageName), teamPackageName));
+                } catch (InstrumentationException ie) {
+                    // the error has already been reported
+                    return new Result(name, null);
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Returns the names of all the classes in the team's package that are on the classpath.
+     */
+    private List<String> findTeamClasses() {
+        List<String> names = new LinkedList<String>();
+        String prefix = teamPackageName + "/";
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            File f = new File(entry);
+            if (f.isDirectory())
+                findClassesInDirectory(new File(f, teamPackageName), prefix, names);
+            else if (f.isFile()) {
+                try {
+                    JarFile jar = new JarFile(f);
+                    try {
+                        Enumeration<JarEntry> entries = jar.entries();
+                        while (entries.hasMoreElements()) {
+                            String name = entries.nextElement().getName();
+                            if (name.startsWith(prefix) && name.endsWith(".class"))
+                                names.add(name.substring(0, name.length() - 6));
+                        }
+                    } finally {
+                        jar.close();
+                    }
+                } catch (IOException e) {
+                    // not a jar, so it can't have any of the team's classes
+                }
+            }
+        }
+        return names;
+    }
+
+    private static void findClassesInDirectory(File dir, String prefix, List<String> names) {
+        File[] files = dir.listFiles();
+        if (files == null)
+            return;
+        for (File f : files) {
+            String name = f.getName();
+            if (f.isDirectory())
+                findClassesInDirectory(f, prefix + name + "/", names);
+            else if (name.endsWith(".class"))
+                names.add(prefix + name.substring(0, name.length() - 6));
+        }
+    }
+
+    /**
+     * Returns the names of the classes in the instrumented package that the given class file mentions, either as
+     * classes or in descriptors.
+     */
+    static Set<String> referencedInstrumentedClasses(byte[] b) {
+        Set<String> names = new HashSet<String>();
+        int count = readUnsignedShort(b, 8);
+        int pos = 10;
+        for (int i = 1; i < count; i++) {
+            int tag = b[pos] & 0xFF;
+            switch (tag) {
+                case 1: // Utf8
+                    int len = readUnsignedShort(b, pos + 1);
+                    findInstrumentedNames(decodeUtf8(b, pos + 3, len), names);
+                    pos += 3 + len;
+                    break;
+                case 5: // Long
+                case 6: // Double
+                    pos += 9;
+                    i++;
+                    break;
+                case 3: // Integer
+                case 4: // Float
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 12: // NameAndType
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    pos += 5;
+                    break;
+                case 15: // MethodHandle
+                    pos += 4;
+                    break;
+                default: // Class, String, MethodType, Module, Package
+                    pos += 3;
+                    break;
+            }
+        }
+        return names;
+    }
+
+    private static void findInstrumentedNames(String s, Set<String> names) {
+        int start = s.indexOf("instrumented/");
+        while (start >= 0) {
+            int end = start;
+            while (end < s.length() && s.charAt(end) != ';' && s.charAt(end) != '<' && s.charAt(end) != '.')
+                end++;
+            names.add(s.substring(start, end));
+            start = s.indexOf("instrumented/", end);
+        }
+    }
+
+    private static int readUnsignedShort(byte[] b, int pos) {
+        return ((b[pos] & 0xFF) << 8) | (b[pos + 1] & 0xFF);
+    }
+
+    // class files use a modified UTF-8, but class names are plain enough that the difference doesn't matter
+    private static String decodeUtf8(byte[] b, int pos, int len) {
+        try {
+            return new String(b, pos, len, "UTF-8");
+        } catch (java.io.UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
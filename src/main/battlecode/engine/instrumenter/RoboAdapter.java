@@ -18,6 +18,13 @@ public class RoboAdapter extends ClassAdapter implements Opcodes {
     // don't check those.
     private final boolean checkDisallowed;
 
+    // moves static fields into per-robot storage, or null if they stay where they are
+    private final PerRobotStatics statics;
+    // whether this class's static fields and static initializer are moved
+    private boolean movingStatics;
+    private boolean isInterface;
+    private boolean keepInterfaceClinit;
+
     /**
      * Creates a RoboAdapter to instrument a given class.
      *
@@ -27,11 +34,30 @@ public class RoboAdapter extends ClassAdapter implements Opcodes {
      * @param silenced            whether System.out should be silenced for this class
      */
     public RoboAdapter(final ClassVisitor cv, final String teamPackageName, final boolean debugMethodsEnabled, boolean silenced, boolean checkDisallowed) {
+        this(cv, teamPackageName, debugMethodsEnabled, silenced, checkDisallowed, null);
+    }
+
+    /**
+     * Creates a RoboAdapter that also moves the class's static fields into per-robot storage.
+     *
+     * @param statics the PerRobotStatics of the loader that the class is for, or null to leave static fields alone
+     */
+    public RoboAdapter(final ClassVisitor cv, final String teamPackageName, final boolean debugMethodsEnabled, boolean silenced, boolean checkDisallowed, PerRobotStatics statics) {
         super(cv);
         this.teamPackageName = teamPackageName;
         this.debugMethodsEnabled = debugMethodsEnabled;
         this.silenced = silenced;
         this.checkDisallowed = checkDisallowed;
+        this.statics = statics;
+    }
+
+    /**
+     * Keeps the static initializer of an interface, renamed to PerRobotStatics.CLINIT, instead of dropping it.
+     * The result isn't a valid interface; it is only used to get at the instrumented initializer.
+     */
+    RoboAdapter keepInterfaceClinit() {
+        keepInterfaceClinit = true;
+        return this;
     }
 
     /**
@@ -54,6 +80,13 @@ public class RoboAdapter extends ClassAdapter implements Opcodes {
         //	newSuperName = "battlecode/java/lang/Object";
         //else
         newSuperName = ClassReferenceUtil.classReference(superName, teamPackageName, silenced, checkDisallowed);
+        if (statics != null) {
+            isInterface = (access & ACC_INTERFACE) != 0;
+            if ((access & ACC_ENUM) != 0)
+                statics.checkEnum(className);
+            else
+                movingStatics = true;
+        }
         super.visit(version, access, className, ClassReferenceUtil.methodSignatureReference(signature, teamPackageName, silenced, checkDisallowed), newSuperName, interfaces);
     }
 
@@ -73,6 +106,16 @@ public class RoboAdapter extends ClassAdapter implements Opcodes {
         // for performance reasons.
         access &= ~Opcodes.ACC_SYNCHRONIZED;
 
+        String newName = name;
+        if (movingStatics && name.equals("<clinit>")) {
+            // PerRobotStatics runs the initializer once for each robot.  Interfaces can't have any other static
+            // methods, so their initializers are copied into the holder class instead.
+            if (isInterface && !keepInterfaceClinit)
+                return null;
+            newName = PerRobotStatics.CLINIT;
+            access = ACC_PUBLIC | ACC_STATIC | ACC_SYNTHETIC;
+        }
+
         //System.out.println("sigm "+signature);
         if (exceptions != null) {
             for (int i = 0; i < exceptions.length; i++) {
@@ -80,13 +123,13 @@ public class RoboAdapter extends ClassAdapter implements Opcodes {
             }
         }
         MethodVisitor mv = cv.visitMethod(access,
-                name,
+                newName,
                 ClassReferenceUtil.methodDescReference(desc, teamPackageName, silenced, checkDisallowed),
                 ClassReferenceUtil.methodSignatureReference(signature, teamPackageName, silenced, checkDisallowed),
                 exceptions);
         // create a new RoboMethodAdapter, and let it loose on this method
         //return mv == null ? null : new RoboMethodAdapter(mv, className, name, desc, teamPackageName, debugMethodsEnabled, silenced, checkDisallowed);
-        return mv == null ? null : new RoboMethodTree(mv, className, access, name, desc, signature, exceptions, teamPackageName, debugMethodsEnabled, silenced, checkDisallowed);
+        return mv == null ? null : new RoboMethodTree(mv, className, access, name, desc, signature, exceptions, teamPackageName, debugMethodsEnabled, silenced, checkDisallowed, statics);
     }
 
     /**
@@ -98,6 +141,9 @@ public class RoboAdapter extends ClassAdapter implements Opcodes {
         // should never be accessed by more than one thread.
         if (checkDisallowed || (access & Opcodes.ACC_STATIC) == 0)
             access &= ~Opcodes.ACC_VOLATILE;
+        // constants stay, since they can't be changed and javac copies them into the code that uses them anyway
+        if (movingStatics && (access & Opcodes.ACC_STATIC) != 0 && value == null)
+            return null;
         FieldVisitor fv = cv.visitField(access,
                 name,
                 ClassReferenceUtil.classDescReference(desc, teamPackageName, silenced, checkDisallowed),
@@ -11,8 +11,10 @@ import org.objectweb.asm.tree.*;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static org.objectweb.asm.tree.AbstractInsnNode.*;
@@ -26,6 +28,7 @@ public class RoboMethodTree extends MethodNode implements Opcodes {
     private final boolean silenced;
     private final boolean checkDisallowed;
     private final String methodDesc;    // the description of this method, e.g., "()V"
+    private final PerRobotStatics statics;    // moves static fields into per-robot storage, or null
     private boolean codeVisited = false;    // tells whether visitCode() has been called
 
     // all the exception handlers we've seen in the code
@@ -44,11 +47,22 @@ public class RoboMethodTree extends MethodNode implements Opcodes {
 
     private int bytecodeCtr = 0;
 
+    // labels that don't start a new basic block for accounting purposes, see analyzeBlocks
+    private final Set<LabelNode> mergedLabels = new HashSet<LabelNode>();
+    // the heads of counted loops that are charged before they start, and what they cost
+    private final Map<LabelNode, Integer> hoistedLoops = new HashMap<LabelNode, Integer>();
+    // the GOTOs at the ends of those loops
+    private final Set<AbstractInsnNode> hoistedLoopEnds = new HashSet<AbstractInsnNode>();
+
+    // bytecodes from merged blocks that haven't been charged yet
+    private int pendingCtr = 0;
+    private boolean inHoistedLoop = false;
+
     private MethodVisitor methodWriter;
 
     private static boolean checkedFastHash = false, usingFastHash;
 
-    public RoboMethodTree(final MethodVisitor mv, final String className, final int access, final String methodName, final String methodDesc, final String signature, final String[] exceptions, final String teamPackageName, final boolean debugMethodsEnabled, boolean silenced, boolean checkDisallowed) {
+    public RoboMethodTree(final MethodVisitor mv, final String className, final int access, final String methodName, final String methodDesc, final String signature, final String[] exceptions, final String teamPackageName, final boolean debugMethodsEnabled, boolean silenced, boolean checkDisallowed, PerRobotStatics statics) {
         super(access, methodName, methodDesc, signature, exceptions);
         this.methodName = methodName;
         this.teamPackageName = teamPackageName;
@@ -57,6 +71,7 @@ public class RoboMethodTree extends MethodNode implements Opcodes {
         this.silenced = silenced;
         this.checkDisallowed = checkDisallowed;
         this.methodDesc = methodDesc;
+        this.statics = statics;
         methodWriter = mv;
         if (!checkedFastHash) {
             usingFastHash = Boolean.getBoolean(battlecode.server.Config.getGlobalConfig().get("bc.server.fast-hash"));
@@ -83,6 +98,8 @@ public class RoboMethodTree extends MethodNode implements Opcodes {
         for (Object o : tryCatchBlocks) {
             visitTryCatchBlockNode((TryCatchBlockNode) o);
         }
+        if (InstrumentingClassLoader.superblocks())
+            analyzeBlocks();
         for (AbstractInsnNode node : instructions.toArray()) {
             // node could be taken out of the list
             // or have stuff inserted after it,
@@ -121,6 +138,8 @@ public class RoboMethodTree extends MethodNode implements Opcodes {
                 case TABLESWITCH_INSN:
                     bytecodeCtr++;
                     endOfBasicBlock(node);
+                    if (hoistedLoopEnds.contains(node))
+                        inHoistedLoop = false;
                     break;
                 case IINC_INSN:
                 case INT_INSN:
@@ -128,6 +147,8 @@ public class RoboMethodTree extends MethodNode implements Opcodes {
                     break;
             }
         }
+        if (statics != null)
+            redirectStatics();
         startLabel = new LabelNode(new Label());
         instructions.insert(startLabel);
         boolean anyTryCatch = tryCatchBlocks.size() > 0;
@@ -147,6 +168,47 @@ public class RoboMethodTree extends MethodNode implements Opcodes {
         accept(methodWriter);
     }
 
+    /**
+     * Turns accesses to static fields that have been moved into per-robot storage into accesses to the fields of
+     * the running robot's holder object, and makes sure that a robot's copy of a class's static state has been
+     * initialized before the robot creates an instance of the class or calls one of its static methods, just as
+     * the JVM would initialize the class.  None of this is charged to the robot, but the static initializers are.
+     */
+    private void redirectStatics() {
+        for (AbstractInsnNode node : instructions.toArray()) {
+            int op = node.getOpcode();
+            if (op == GETSTATIC || op == PUTSTATIC) {
+                FieldInsnNode n = (FieldInsnNode) node;
+                String owner = statics.declaringClass(n.owner, n.name);
+                if (owner == null)
+                    continue;
+                String holder = owner + PerRobotStatics.HOLDER_SUFFIX;
+                instructions.insertBefore(n, new MethodInsnNode(INVOKESTATIC, holder, "get", "()L" + holder + ";"));
+                if (op == GETSTATIC)
+                    instructions.set(n, new FieldInsnNode(GETFIELD, holder, n.name, n.desc));
+                else {
+                    // the holder has to go under the value
+                    if (n.desc.equals("J") || n.desc.equals("D")) {
+                        instructions.insertBefore(n, new InsnNode(DUP_X2));
+                        instructions.insertBefore(n, new InsnNode(POP));
+                    } else
+                        instructions.insertBefore(n, new InsnNode(SWAP));
+                    instructions.set(n, new FieldInsnNode(PUTFIELD, holder, n.name, n.desc));
+                }
+            } else if (op == NEW || op == INVOKESTATIC) {
+                String owner = op == NEW ? ((TypeInsnNode) node).desc : ((MethodInsnNode) node).owner;
+                // if this class's code is running then the robot has already initialized it
+                if (owner.equals(className))
+                    continue;
+                String holder = statics.holderFor(owner);
+                if (holder == null)
+                    continue;
+                instructions.insertBefore(node, new MethodInsnNode(INVOKESTATIC, holder, "get", "()L" + holder + ";"));
+                instructions.insertBefore(node, new InsnNode(POP));
+            }
+        }
+    }
+
     private void visitTryCatchBlockNode(TryCatchBlockNode n) {
         exceptionHandlers.add(n.handler);
         if (n.type != null) {
@@ -198,12 +260,14 @@ public class RoboMethodTree extends MethodNode implements Opcodes {
             case ARETURN:
             case RETURN:
                 endOfBasicBlock(n);
+                verifyPoint(n);
                 if (methodName.startsWith("debug_") && methodDesc.endsWith("V")) {
                     instructions.insertBefore(n, new MethodInsnNode(INVOKESTATIC, "battlecode/engine/instrumenter/RobotMonitor", "decrementDebugLevel", "()V"));
                 }
                 break;
             case ATHROW:
                 endOfBasicBlock(n);
+                verifyPoint(n);
                 break;
             case MONITORENTER:
             case MONITOREXIT:
@@ -229,6 +293,7 @@ public class RoboMethodTree extends MethodNode implements Opcodes {
         if (n.name.equals("hashCode") && n.desc.equals("()I") && n.getOpcode() != INVOKESTATIC) {
             bytecodeCtr++;
             endOfBasicBlock(n);
+            verifyPoint(n);
             // replace hashCode with deterministic version
             // send the object, its hash code, and the hash code method owner to
             // ObjectHashCode for analysis
@@ -377,8 +442,10 @@ public class RoboMethodTree extends MethodNode implements Opcodes {
             }
         }
 
-        if (endBasicBlock)
+        if (endBasicBlock) {
             endOfBasicBlock(n);
+            verifyPoint(n);
+        }
 
     }
 
@@ -403,6 +470,18 @@ public class RoboMethodTree extends MethodNode implements Opcodes {
     }
 
     private void visitLabelNode(LabelNode n) {
+        Integer loopCost = hoistedLoops.get(n);
+        if (inHoistedLoop) {
+            endOfBasicBlock(n);
+            return;
+        } else if (loopCost != null) {
+            endOfBasicBlock(n, loopCost);
+            inHoistedLoop = true;
+            return;
+        } else if (mergedLabels.contains(n)) {
+            mergeBlock(n);
+            return;
+        }
         endOfBasicBlock(n);
         if (exceptionHandlers.contains(n))
             bytecodeCtr += GameConstants.EXCEPTION_BYTECODE_PENALTY;
@@ -442,11 +521,277 @@ public class RoboMethodTree extends MethodNode implements Opcodes {
     }
 
     private void endOfBasicBlock(AbstractInsnNode n) {
-        if (bytecodeCtr == 0)
+        endOfBasicBlock(n, 0);
+    }
+
+    /**
+     * Charges for the basic block that ends before <code>n</code>, along with any blocks merged into it and
+     * <code>prepaid</code> more bytecodes.  Blocks inside a hoisted loop were paid for before the loop started,
+     * so they aren't charged again.
+     */
+    private void endOfBasicBlock(AbstractInsnNode n, int prepaid) {
+        boolean verify = InstrumentingClassLoader.verifyAccounting();
+        if (verify && bytecodeCtr != 0) {
+            instructions.insertBefore(n, new LdcInsnNode(Integer.valueOf(bytecodeCtr)));
+            instructions.insertBefore(n, new MethodInsnNode(INVOKESTATIC, "battlecode/engine/instrumenter/lang/BytecodeCounter", "shadow", "(I)V"));
+        }
+        if (inHoistedLoop) {
+            bytecodeCtr = 0;
             return;
-        instructions.insertBefore(n, new LdcInsnNode(new Integer(bytecodeCtr)));
-        instructions.insertBefore(n, new MethodInsnNode(INVOKESTATIC, "battlecode/engine/instrumenter/RobotMonitor", "incrementBytecodes", "(I)V"));
+        }
+        int total = pendingCtr + bytecodeCtr + prepaid;
+        pendingCtr = 0;
         bytecodeCtr = 0;
+        if (total == 0)
+            return;
+        instructions.insertBefore(n, new LdcInsnNode(Integer.valueOf(total)));
+        instructions.insertBefore(n, new MethodInsnNode(INVOKESTATIC, "battlecode/engine/instrumenter/lang/BytecodeCounter", verify ? "decrementVerified" : "decrement", "(I)V"));
+    }
+
+    /**
+     * Carries the basic block that ends at a merged label over into the next one, so that both are charged
+     * together.
+     */
+    private void mergeBlock(LabelNode n) {
+        if (InstrumentingClassLoader.verifyAccounting() && bytecodeCtr != 0) {
+            instructions.insertBefore(n, new LdcInsnNode(Integer.valueOf(bytecodeCtr)));
+            instructions.insertBefore(n, new MethodInsnNode(INVOKESTATIC, "battlecode/engine/instrumenter/lang/BytecodeCounter", "shadow", "(I)V"));
+        }
+        pendingCtr += bytecodeCtr;
+        bytecodeCtr = 0;
+    }
+
+    /**
+     * In verify mode, checks at <code>n</code> that the robot has been charged exactly what per-block
+     * accounting would have charged it.  Must come right after a call to endOfBasicBlock.
+     */
+    private void verifyPoint(AbstractInsnNode n) {
+        if (!InstrumentingClassLoader.verifyAccounting())
+            return;
+        instructions.insertBefore(n, new LdcInsnNode(className + "." + methodName));
+        instructions.insertBefore(n, new MethodInsnNode(INVOKESTATIC, "battlecode/engine/instrumenter/lang/BytecodeCounter", "verify", "(Ljava/lang/String;)V"));
+    }
+
+    /**
+     * Finds the places where the bytecode accounting can be done less often without changing what a robot is
+     * charged.  This is done on the original code, before anything is inserted.
+     * <p/>
+     * A label that can only be reached by falling through from the previous instruction doesn't need to end a
+     * basic block if the code after it, up to the next end of a basic block, can't throw an exception or call a
+     * method: whenever the block before the label runs to completion, so does the block after it, so the two can
+     * be charged together at the end of the second one.
+     * <p/>
+     * A loop of the form <code>for (int i = C0; i &lt; C1; i++) { ... }</code>, where the body only does
+     * arithmetic on local variables and doesn't jump or assign to <code>i</code>, always runs the same number of
+     * times, so its whole cost is charged once before it starts and the loop itself has no accounting calls.
+     * Loops that cost more than a whole turn's worth of bytecodes are left alone, so that a robot can't run
+     * far ahead of what it has paid for.
+     */
+    private void analyzeBlocks() {
+        AbstractInsnNode[] insns = instructions.toArray();
+        Map<LabelNode, Integer> jumpCounts = new HashMap<LabelNode, Integer>();
+        for (AbstractInsnNode n : insns) {
+            switch (n.getType()) {
+                case JUMP_INSN:
+                    countJump(jumpCounts, ((JumpInsnNode) n).label);
+                    break;
+                case LOOKUPSWITCH_INSN:
+                    countJump(jumpCounts, ((LookupSwitchInsnNode) n).dflt);
+                    for (Object o : ((LookupSwitchInsnNode) n).labels)
+                        countJump(jumpCounts, (LabelNode) o);
+                    break;
+                case TABLESWITCH_INSN:
+                    countJump(jumpCounts, ((TableSwitchInsnNode) n).dflt);
+                    for (Object o : ((TableSwitchInsnNode) n).labels)
+                        countJump(jumpCounts, (LabelNode) o);
+                    break;
+            }
+        }
+        AbstractInsnNode prev = null;
+        for (int i = 0; i < insns.length; i++) {
+            AbstractInsnNode n = insns[i];
+            if (n.getType() == LABEL) {
+                LabelNode l = (LabelNode) n;
+                if (jumpCounts.containsKey(l) || exceptionHandlers.contains(l)) {
+                    findCountedLoop(insns, i, jumpCounts);
+                } else if (prev != null && fallsThrough(prev) && isPureBlock(insns, i + 1)) {
+                    mergedLabels.add(l);
+                }
+            } else if (n.getOpcode() >= 0)
+                prev = n;
+        }
+    }
+
+    private static void countJump(Map<LabelNode, Integer> jumpCounts, LabelNode l) {
+        Integer c = jumpCounts.get(l);
+        jumpCounts.put(l, c == null ? 1 : c + 1);
+    }
+
+    private static boolean fallsThrough(AbstractInsnNode n) {
+        switch (n.getOpcode()) {
+            case GOTO:
+            case JSR:
+            case RET:
+            case TABLESWITCH:
+            case LOOKUPSWITCH:
+            case IRETURN:
+            case LRETURN:
+            case FRETURN:
+            case DRETURN:
+            case ARETURN:
+            case RETURN:
+            case ATHROW:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    private static boolean endsBlock(AbstractInsnNode n) {
+        switch (n.getType()) {
+            case LABEL:
+            case JUMP_INSN:
+            case LOOKUPSWITCH_INSN:
+            case TABLESWITCH_INSN:
+                return true;
+            default:
+                return !fallsThrough(n);
+        }
+    }
+
+    /**
+     * Tests whether the code from <code>insns[start]</code> to the next end of a basic block can neither throw
+     * an exception nor call a method.
+     */
+    private static boolean isPureBlock(AbstractInsnNode[] insns, int start) {
+        for (int i = start; i < insns.length; i++) {
+            AbstractInsnNode n = insns[i];
+            if (endsBlock(n))
+                return n.getOpcode() != RET;
+            if (n.getOpcode() >= 0 && !isPure(n))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Tests whether <code>n</code> only works on the stack and local variables, so it can't throw an exception.
+     */
+    private static boolean isPure(AbstractInsnNode n) {
+        int op = n.getOpcode();
+        switch (op) {
+            case LDC:
+                return !(((LdcInsnNode) n).cst instanceof Type);
+            case IDIV:
+            case LDIV:
+            case IREM:
+            case LREM:
+            case RET:
+                return false;
+            default:
+                return (op >= NOP && op <= SIPUSH)
+                        || (op >= ILOAD && op <= ALOAD)
+                        || (op >= ISTORE && op <= ASTORE)
+                        || (op >= POP && op <= DCMPG);
+        }
+    }
+
+    private static Integer intConstant(AbstractInsnNode n) {
+        int op = n.getOpcode();
+        if (op >= ICONST_M1 && op <= ICONST_5)
+            return op - ICONST_0;
+        if (op == BIPUSH || op == SIPUSH)
+            return ((IntInsnNode) n).operand;
+        if (op == LDC && ((LdcInsnNode) n).cst instanceof Integer)
+            return (Integer) ((LdcInsnNode) n).cst;
+        return null;
+    }
+
+    private boolean isPlainLabel(AbstractInsnNode n, Map<LabelNode, Integer> jumpCounts) {
+        return n.getType() != LABEL || !(jumpCounts.containsKey(n) || exceptionHandlers.contains(n));
+    }
+
+    /**
+     * If <code>insns[head]</code> is the head of a counted loop (see analyzeBlocks), adds it to hoistedLoops.
+     */
+    private void findCountedLoop(AbstractInsnNode[] insns, int head, Map<LabelNode, Integer> jumpCounts) {
+        LabelNode headLabel = (LabelNode) insns[head];
+        // the only way into the loop other than the back edge must be falling through from "i = C0"
+        if (exceptionHandlers.contains(headLabel) || jumpCounts.get(headLabel) != 1)
+            return;
+        int i = head - 1;
+        while (i >= 0 && insns[i].getOpcode() < 0) {
+            if (!isPlainLabel(insns[i], jumpCounts))
+                return;
+            i--;
+        }
+        if (i < 1 || insns[i].getOpcode() != ISTORE)
+            return;
+        int var = ((VarInsnNode) insns[i]).var;
+        i--;
+        while (i >= 0 && insns[i].getOpcode() < 0) {
+            if (!isPlainLabel(insns[i], jumpCounts))
+                return;
+            i--;
+        }
+        Integer start = i >= 0 ? intConstant(insns[i]) : null;
+        if (start == null)
+            return;
+        // the condition: ILOAD i; C1; IF_ICMPGE or IF_ICMPGT out of the loop
+        AbstractInsnNode[] cond = new AbstractInsnNode[3];
+        int j = head + 1;
+        for (int k = 0; k < cond.length; k++) {
+            while (j < insns.length && insns[j].getOpcode() < 0) {
+                if (!isPlainLabel(insns[j], jumpCounts))
+                    return;
+                j++;
+            }
+            if (j == insns.length)
+                return;
+            cond[k] = insns[j++];
+        }
+        Integer end = intConstant(cond[1]);
+        int condOp = cond[2].getOpcode();
+        if (cond[0].getOpcode() != ILOAD || ((VarInsnNode) cond[0]).var != var || end == null
+                || (condOp != IF_ICMPGE && condOp != IF_ICMPGT))
+            return;
+        // the body: pure code that doesn't touch i, then i++ and a GOTO back to the head
+        int bodyCount = 0;
+        AbstractInsnNode last = null;
+        for (; j < insns.length; j++) {
+            AbstractInsnNode n = insns[j];
+            if (n.getOpcode() < 0) {
+                if (!isPlainLabel(n, jumpCounts))
+                    return;
+                continue;
+            }
+            bodyCount++;
+            if (n.getOpcode() == GOTO) {
+                if (((JumpInsnNode) n).label != headLabel || last == null || last.getOpcode() != IINC
+                        || ((IincInsnNode) last).var != var || ((IincInsnNode) last).incr != 1)
+                    return;
+                break;
+            }
+            if (!isPure(n) || endsBlock(n))
+                return;
+            if (last != null && last.getOpcode() == IINC && ((IincInsnNode) last).var == var)
+                return;
+            if (n.getOpcode() == ISTORE && ((VarInsnNode) n).var == var)
+                return;
+            last = n;
+        }
+        if (j == insns.length)
+            return;
+        long trips = (long) end - start + (condOp == IF_ICMPGT ? 1 : 0);
+        if (condOp == IF_ICMPGT && end == Integer.MAX_VALUE)
+            return;
+        if (trips < 0)
+            trips = 0;
+        long cost = cond.length * (trips + 1) + bodyCount * trips;
+        if (cost > GameConstants.BYTECODE_LIMIT)
+            return;
+        hoistedLoops.put(headLabel, (int) cost);
+        hoistedLoopEnds.add(insns[j]);
     }
 
     /**
@@ -1,5 +1,7 @@
 package battlecode.engine.instrumenter;
 
+import battlecode.engine.scheduler.Scheduler;
+
 /**
  * An exception used to kill robot threads when their robot dies in the game.  In other words, when a robot
  * dies, a RobotDeathException is thrown in the robot's thread, and it propagates all the way up to RobotRunnable,
@@ -13,7 +15,10 @@ public class RobotDeathException extends VirtualMachineError {
 
     public RobotDeathException() {
         super();
-        RobotMonitor.currentRobotData.thrownRobotDeathException = true;
+        // the thread throwing this may not be the one that's running, if its robot was killed
+        RobotMonitor.RobotData data = Scheduler.getOwnRobotData();
+        if (data != null)
+            data.thrownRobotDeathException = true;
     }
 
 }
@@ -1,149 +1,184 @@
 package battlecode.engine.instrumenter;
 
+import battlecode.engine.EngineContext;
+import battlecode.engine.EngineMetrics;
+import battlecode.engine.ErrorReporter;
 import battlecode.engine.GenericRobot;
 import battlecode.engine.GenericWorld;
+import battlecode.engine.instrumenter.lang.ObjectHashCode;
 import battlecode.engine.instrumenter.lang.RoboPrintStream;
-import battlecode.engine.instrumenter.lang.SilencedPrintStream;
 import battlecode.engine.scheduler.Scheduler;
 import battlecode.server.Config;
 
-import java.util.HashSet;
-import java.util.Set;
-
 /**
- * RobotMonitor is a singleton class for monitoring robots' bytecode execution and stack size, and killing robots' threads.  Player's classes should
+ * RobotMonitor is a class for monitoring robots' bytecode execution and stack size, and killing robots' threads.  Player's classes should
  * be instrumented so that they make calls to RobotMonitor as appropriate.
+ * <p/>
+ * Each match has its own RobotMonitor (see {@link EngineContext}).  The static methods act on the RobotMonitor of the match
+ * that the calling thread belongs to.
  *
  * @author adamd
  */
 public class RobotMonitor {
 
-    private static int DEBUG_BYTECODES;
-
-    private static final Set<Integer> robotsToKill = new HashSet<Integer>();
+    private final int DEBUG_BYTECODES;
 
     // the RobotData for the currently running robot
-    public volatile static RobotData currentRobotData;
+    private volatile RobotData currentRobotData;
+
+    private final boolean[] silenced = new boolean[2];
 
-    private static boolean[] silenced = new boolean[2];
+    private int debugLevel;
+    private int bytecodeLimit;
 
-    private static int debugLevel;
-    private static int bytecodeLimit;
-    private static int bytecodesLeft;
+    private final EngineContext context;
+    private GenericWorld myGameWorld = null;
 
-    private static GenericWorld myGameWorld = null;
+    private final RoboPrintStream.State printState = new RoboPrintStream.State();
+
+    // where to record robot turns, or null if metrics are disabled
+    private final EngineMetrics metrics;
+    private long turnStart;
 
 
     /**
      * A "struct" that holds data about a robot's execution, e.g., bytecodes, stack size, etc.
      */
     public static class RobotData {
+        // the counter that instrumented code decrements (see BytecodeCounter); the same as bytecodesLeft while the
+        // robot is running, except inside debug methods, where it counts down from DEBUG_BYTECODES instead
+        public int counter;
         public int bytecodesLeft;
         public int debugLevel = 0;
         public final int ID;
         public boolean thrownRobotDeathException = false;
+        // set by the Scheduler when the robot is killed by someone else
+        public volatile boolean killed = false;
+        // the robot's own state for the classes in battlecode.engine.instrumenter.lang, which aren't per robot
+        public final ObjectHashCode.State hashCodes = new ObjectHashCode.State();
+        // an instrumented java.util.Random, which the engine can't name
+        public Object random;
+        // the robot's copies of its team's static fields, when the team shares one class loader (see RobotStatics)
+        public Object[] statics = new Object[0];
+        // the data field of the BytecodeCounter that the robot's team shares, either for all of the team's classes
+        // or for its shared library classes, which has to be pointed at the robot whenever it runs, or null if
+        // the robot's code only uses its own BytecodeCounter
+        public java.lang.reflect.Field sharedCounterData;
 
         public RobotData(int ID) {
             this.ID = ID;
         }
     }
 
-    // private constructor enforces the singleton pattern
-    private RobotMonitor() {
-    }
-
-    private static void init() {
-        robotsToKill.clear();
+    public RobotMonitor(EngineContext context) {
+        this.context = context;
         Config options = Config.getGlobalConfig();
         silenced[0] = options.getBoolean("bc.engine.silence-a");
         silenced[1] = options.getBoolean("bc.engine.silence-b");
         DEBUG_BYTECODES = options.getInt("bc.engine.debug-max-bytecodes");
+        metrics = context.getMetrics();
     }
 
     /**
-     * Resets the internal state of the RobotMonitor.  Should be called between games.
+     * Returns the RobotMonitor of the match that the calling thread belongs to.
      */
-    public static void reset() {
-        init();
+    private static RobotMonitor current() {
+        return EngineContext.current().getRobotMonitor();
     }
 
     /**
      * Switches the currently active robot to the one referred to by the given RobotData.
      */
-    public static void switchRunner(RobotData newData) {
+    public void switchRunner(RobotData newData) {
 
         // switch RobotData to the new robot
         currentRobotData = newData;
 
-        if (robotsToKill.contains(newData.ID)) {
-            //System.out.println("Killing "+newData.ID);
-            throw new RobotDeathException();
-        }
-
         if (newData.ID >= 0) {
+            if (newData.sharedCounterData != null) {
+                try {
+                    newData.sharedCounterData.set(null, newData);
+                } catch (IllegalAccessException e) {
+                    ErrorReporter.report(e);
+                }
+            }
             myGameWorld.beginningOfExecution(newData.ID);
             GenericRobot robot = myGameWorld.getRobotByID(newData.ID);
             bytecodeLimit = robot.getBytecodeLimit();
             debugLevel = currentRobotData.debugLevel;
             currentRobotData.bytecodesLeft += bytecodeLimit;
             if (debugLevel == 0)
-                bytecodesLeft = currentRobotData.bytecodesLeft;
+                currentRobotData.counter = currentRobotData.bytecodesLeft;
             else
-                bytecodesLeft = DEBUG_BYTECODES;
-
-            if (silenced[robot.getTeam().ordinal()]) {
-                SilencedPrintStream stream = SilencedPrintStream.theInstance();
-                battlecode.engine.instrumenter.lang.System.out = stream;
-                battlecode.engine.instrumenter.lang.System.err = stream;
-            } else {
-                RoboPrintStream stream = RoboPrintStream.theInstance();
-                stream.changeRobot();
-                battlecode.engine.instrumenter.lang.System.out = stream;
-                battlecode.engine.instrumenter.lang.System.err = stream;
-            }
+                currentRobotData.counter = DEBUG_BYTECODES;
+
+            printState.changeRobot(silenced[robot.getTeam().ordinal()]);
+
+            if (metrics != null)
+                turnStart = System.nanoTime();
         }
     }
 
     public static int getCurrentRobotID() {
-        return currentRobotData.ID;
+        return current().currentRobotData.ID;
+    }
+
+    public static RobotData getCurrentRobotData() {
+        return current().currentRobotData;
     }
 
     public static GenericRobot getCurrentRobot() {
-        return myGameWorld.getRobotByID(currentRobotData.ID);
+        RobotMonitor m = current();
+        return m.myGameWorld.getRobotByID(m.currentRobotData.ID);
+    }
+
+    /**
+     * Returns the output state of the robot that is currently running.
+     */
+    public static RoboPrintStream.State getPrintState() {
+        return current().printState;
     }
 
     /**
      * Increments the active robot's debug level.  Should be called at the beginning of any debug method.
      */
     public static void incrementDebugLevel() {
-        if (debugLevel == 0) {
-            currentRobotData.bytecodesLeft = bytecodesLeft;
-            bytecodesLeft = DEBUG_BYTECODES;
+        RobotMonitor m = current();
+        if (m.currentRobotData != Scheduler.getOwnRobotData())
+            return;    // this robot was killed, and the robot that's running isn't us
+        if (m.debugLevel == 0) {
+            m.currentRobotData.bytecodesLeft = m.currentRobotData.counter;
+            m.currentRobotData.counter = m.DEBUG_BYTECODES;
         }
-        debugLevel++;
+        m.debugLevel++;
     }
 
     /**
      * Decrements the active robot's debug level.  Should be called at the end of any debug method.
      */
     public static void decrementDebugLevel() {
-        debugLevel--;
-        if (debugLevel == 0) {
-            bytecodesLeft = currentRobotData.bytecodesLeft;
+        RobotMonitor m = current();
+        if (m.currentRobotData != Scheduler.getOwnRobotData())
+            return;    // this robot was killed, and the robot that's running isn't us
+        m.debugLevel--;
+        if (m.debugLevel == 0) {
+            m.currentRobotData.counter = m.currentRobotData.bytecodesLeft;
         }
     }
 
     /**
      * Increments the currently active robot's bytecode count by the given amount.  If the robot exceeds its bytecode limit for the round,
-     * this method will block until the robot's next round.  Should be called at the end of every basic block.
+     * this method will block until the robot's next round.  Instrumented code calls this through BytecodeCounter, which has
+     * usually charged the bytecodes already, and only calls this once the robot is out of bytecodes.
      *
      * @param numBytecodes the number of bytecodes the robot just executed
      */
     public static void incrementBytecodes(int numBytecodes) {
-        bytecodesLeft -= numBytecodes;
+        RobotMonitor m = current();
+        m.currentRobotData.counter -= numBytecodes;
 
-        while (bytecodesLeft <= 0) {
-            endRunner();
+        while (m.currentRobotData.counter <= 0) {
+            m.endRun();
         }
     }
 
@@ -151,41 +186,49 @@ public class RobotMonitor {
      * Ends the run of the currently active robot.
      */
     public static void endRunner() {
+        current().endRun();
+    }
+
+    private void endRun() {
+        if (metrics != null)
+            metrics.recordRobotTurn(System.nanoTime() - turnStart, bytecodeLimit - (debugLevel == 0 ? currentRobotData.counter : currentRobotData.bytecodesLeft));
         myGameWorld.endOfExecution(currentRobotData.ID);
         currentRobotData.debugLevel = debugLevel;
         if (debugLevel == 0)
-            currentRobotData.bytecodesLeft = bytecodesLeft;
+            currentRobotData.bytecodesLeft = currentRobotData.counter;
         if (currentRobotData.bytecodesLeft > 0)
             currentRobotData.bytecodesLeft = 0;
-        Scheduler.passToNextThread();
+        context.getScheduler().passToNextThread();
     }
 
     /**
-     * Kills the robot thread of the robot with the given ID.  More specifically, the next time the thread is activated,
-     * it will throw a RobotDeathException.
+     * Kills the robot thread of the robot with the given ID.  More specifically, the thread is removed from the
+     * Scheduler right away and throws a RobotDeathException, or, if it is the thread that is running, it
+     * is removed as soon as it ends its turn.
      *
      * @param robotID the integer ID of the robot to kill
      */
     public static void killRobot(int robotID) {
-        robotsToKill.add(robotID);
+        current().context.getScheduler().kill(robotID);
     }
 
     /**
      * Returns the bytecode number that the active robot is currently on.  Note that this can be above bytecodeLimit in some cases.
      */
     public static int getBytecodeNum() {
-        return bytecodeLimit - getBytecodesLeft();
+        return getBytecodeLimit() - getBytecodesLeft();
     }
 
     public static int getBytecodeLimit() {
-        return bytecodeLimit;
+        return current().bytecodeLimit;
     }
 
     public static int getBytecodesLeft() {
-        if (debugLevel == 0)
-            return bytecodesLeft;
+        RobotMonitor m = current();
+        if (m.debugLevel == 0)
+            return m.currentRobotData.counter;
         else
-            return currentRobotData.bytecodesLeft;
+            return m.currentRobotData.bytecodesLeft;
     }
 
     /**
@@ -194,6 +237,7 @@ public class RobotMonitor {
      */
     public static int getBytecodesUsed() {
         int num = getBytecodeNum();
+        int bytecodeLimit = getBytecodeLimit();
         return (num <= bytecodeLimit) ? num : bytecodeLimit;
     }
 
@@ -201,22 +245,23 @@ public class RobotMonitor {
      * Returns the percentage of this robot's maximum bytecodes that were used this round.
      */
     public static double getBytecodesUsedPercent() {
-        return (double) getBytecodesUsed() / bytecodeLimit;
+        return (double) getBytecodesUsed() / getBytecodeLimit();
     }
 
     /**
      * Notifies the RobotMonitor of what the current GameWorld is.  Should be called before the start of each game.
      */
-    public static void setGameWorld(GenericWorld gw) {
+    public void setGameWorld(GenericWorld gw) {
         myGameWorld = gw;
     }
 
     public static boolean thrownRobotDeathException() {
-        return currentRobotData.thrownRobotDeathException;
+        RobotData data = Scheduler.getOwnRobotData();
+        return data != null && data.thrownRobotDeathException;
     }
 
     public static void checkForRobotDeath() {
-        if (currentRobotData.thrownRobotDeathException)
+        if (thrownRobotDeathException())
             throw new RobotDeathException();
     }
 }
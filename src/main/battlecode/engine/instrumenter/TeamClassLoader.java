@@ -0,0 +1,247 @@
+package battlecode.engine.instrumenter;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Defines the instrumented library classes (instrumented/java/util/..., etc.) that all the robots on one team can
+ * share, so that each robot's IndividualClassLoader doesn't have to define its own copy of every one of them.
+ * <p/>
+ * Sharing a class must not give robots a way to talk to each other, so a class is only shared if it has no static
+ * state that could carry a message: every static field has to be final, and has to be a primitive, a String, or an
+ * array that is created empty.  It also has to refer only to instrumented classes that can be shared, since a
+ * shared class can't see any robot's own copies.  Anything else is still defined separately for each robot.  The
+ * per-robot state of the classes in battlecode.engine.instrumenter.lang, e.g. ObjectHashCode, is kept in each
+ * robot's RobotData, so shared classes can use them.
+ * <p/>
+ * The team's loader has its own copies of BytecodeCounter and ObjectHashCode, which the RobotMonitor points at
+ * each of the team's robots as the robot starts its turn, so that shared classes take the same fast path as the
+ * robot's own.
+ */
+class TeamClassLoader extends InstrumentingClassLoader {
+
+    // which classes can be shared; this only depends on the class files, so it is kept for the life of the JVM
+    private static final ConcurrentHashMap<String, Boolean> shareable = new ConcurrentHashMap<String, Boolean>();
+
+    private final String teamPackageName;
+    private final Object lock;
+    private final Map<String, byte[]> instrumentedClasses;
+    private final Map<String, Class<?>> definedClasses = new HashMap<String, Class<?>>();
+
+    // the classes that the team's loader has its own uninstrumented copies of
+    private static final String BYTECODE_COUNTER = "battlecode/engine/instrumenter/lang/BytecodeCounter";
+    private static final String OBJECT_HASH_CODE = "battlecode/engine/instrumenter/lang/ObjectHashCode";
+
+    /**
+     * @param lock                the lock that guards instrumentedClasses
+     * @param instrumentedClasses the match's cache of instrumented classes
+     */
+    TeamClassLoader(String teamPackageName, boolean debugMethodsEnabled, ClassLoader parent, Object lock, Map<String, byte[]> instrumentedClasses) {
+        super(false, debugMethodsEnabled, parent);
+        this.teamPackageName = teamPackageName;
+        this.lock = lock;
+        this.instrumentedClasses = instrumentedClasses;
+    }
+
+    /**
+     * Returns the team's shared copy of the given instrumented class, or null if each robot needs its own copy.
+     */
+    Class<?> loadShared(String name) {
+        synchronized (lock) {
+            Class<?> c = definedClasses.get(name);
+            if (c != null)
+                return c;
+            if (!isShareable(name))
+                return null;
+            return saveAndDefineClass(name, instrumentedBytes(name));
+        }
+    }
+
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        synchronized (lock) {
+            String slashed = name.replace('.', '/');
+            if (slashed.equals(BYTECODE_COUNTER) || slashed.equals(OBJECT_HASH_CODE)) {
+                Class<?> c = definedClasses.get(slashed);
+                if (c == null)
+                    c = saveAndDefineClass(slashed, original(slashed));
+                if (resolve)
+                    resolveClass(c);
+                return c;
+            }
+            if (!slashed.startsWith("instrumented/"))
+                return super.loadClass(name, resolve);
+            // the classes defined here only refer to instrumented classes that can be shared
+            Class<?> c = loadShared(slashed);
+            if (c == null)
+                throw new ClassNotFoundException(name);
+            if (resolve)
+                resolveClass(c);
+            return c;
+        }
+    }
+
+    /**
+     * Returns the data field of the team's copy of BytecodeCounter, which has to be pointed at each of the team's
+     * robots as it starts its turn.
+     */
+    java.lang.reflect.Field counterData() throws ClassNotFoundException, NoSuchFieldException {
+        return loadClass(BYTECODE_COUNTER.replace('/', '.')).getField("data");
+    }
+
+    private static byte[] original(String name) throws ClassNotFoundException {
+        byte[] bytes;
+        try {
+            bytes = DiskClassCache.readOriginal(name);
+        } catch (IOException e) {
+            throw new ClassNotFoundException(name, e);
+        }
+        if (bytes == null)
+            throw new ClassNotFoundException(name);
+        return bytes;
+    }
+
+    public Class<?> saveAndDefineClass(String name, byte[] classBytes) {
+        Class<?> theClass = defineClass(null, classBytes, 0, classBytes.length);
+        definedClasses.put(name, theClass);
+        return theClass;
+    }
+
+    private byte[] instrumentedBytes(String name) {
+        byte[] bytes = instrumentedClasses.get(name);
+        if (bytes == null) {
+            bytes = instrument(name, false, teamPackageName);
+            instrumentedClasses.put(name, bytes);
+        }
+        return bytes;
+    }
+
+    /**
+     * Tests whether a class, and every instrumented class that it refers to, directly or not, is free of static state.
+     */
+    private boolean isShareable(String name) {
+        Boolean known = shareable.get(name);
+        if (known != null)
+            return known;
+        Set<String> seen = new HashSet<String>();
+        LinkedList<String> todo = new LinkedList<String>();
+        seen.add(name);
+        todo.add(name);
+        while (!todo.isEmpty()) {
+            String next = todo.removeFirst();
+            Boolean k = shareable.get(next);
+            if (k != null) {
+                if (!k) {
+                    shareable.put(name, false);
+                    return false;
+                }
+                // everything it refers to has already been checked
+                continue;
+            }
+            byte[] bytes;
+            try {
+                bytes = instrumentedBytes(next);
+            } catch (InstrumentationException e) {
+                shareable.put(name, false);
+                return false;
+            }
+            if (!hasNoStaticState(bytes)) {
+                shareable.put(next, false);
+                shareable.put(name, false);
+                return false;
+            }
+            for (String ref : Preinstrumenter.referencedInstrumentedClasses(bytes)) {
+                if (seen.add(ref))
+                    todo.add(ref);
+            }
+        }
+        // everything reachable from name is safe, so everything reachable from any of those classes is too
+        for (String s : seen)
+            shareable.put(s, true);
+        return true;
+    }
+
+    /**
+     * Tests whether a class's static fields are all final, and are all primitives, Strings, or arrays that its
+     * static initializer creates with length 0.
+     */
+    static boolean hasNoStaticState(byte[] classBytes) {
+        ClassNode cn = new ClassNode();
+        new ClassReader(classBytes).accept(cn, ClassReader.SKIP_DEBUG);
+        Set<String> emptyArrays = emptyArrayFields(cn);
+        for (Object o : cn.fields) {
+            FieldNode f = (FieldNode) o;
+            if ((f.access & Opcodes.ACC_STATIC) == 0)
+                continue;
+            if ((f.access & Opcodes.ACC_FINAL) == 0)
+                return false;
+            char kind = f.desc.charAt(0);
+            if (kind == 'L' && !f.desc.equals("Ljava/lang/String;"))
+                return false;
+            if (kind == '[' && !emptyArrays.contains(f.name))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the names of the static fields that the static initializer sets to an array of length 0, and never
+     * sets to anything else.
+     */
+    private static Set<String> emptyArrayFields(ClassNode cn) {
+        Set<String> empty = new HashSet<String>();
+        Set<String> other = new HashSet<String>();
+        for (Object o : cn.methods) {
+            MethodNode m = (MethodNode) o;
+            // the instructions that aren't bytecode accounting
+            List<AbstractInsnNode> insns = new ArrayList<AbstractInsnNode>();
+            for (AbstractInsnNode n = m.instructions.getFirst(); n != null; n = n.getNext()) {
+                if (n.getOpcode() < 0 || isAccounting(n))
+                    continue;
+                if (n instanceof LdcInsnNode && n.getNext() != null && isAccounting(nextInstruction(n.getNext())))
+                    continue;
+                insns.add(n);
+            }
+            for (int i = 0; i < insns.size(); i++) {
+                AbstractInsnNode n = insns.get(i);
+                if (n.getOpcode() != Opcodes.PUTSTATIC || !((FieldInsnNode) n).owner.equals(cn.name))
+                    continue;
+                String field = ((FieldInsnNode) n).name;
+                if (m.name.equals("<clinit>") && i >= 2 && insns.get(i - 2).getOpcode() == Opcodes.ICONST_0
+                        && (insns.get(i - 1).getOpcode() == Opcodes.ANEWARRAY || insns.get(i - 1).getOpcode() == Opcodes.NEWARRAY))
+                    empty.add(field);
+                else
+                    other.add(field);
+            }
+        }
+        empty.removeAll(other);
+        return empty;
+    }
+
+    private static AbstractInsnNode nextInstruction(AbstractInsnNode n) {
+        while (n != null && n.getOpcode() < 0)
+            n = n.getNext();
+        return n;
+    }
+
+    private static boolean isAccounting(AbstractInsnNode n) {
+        return n instanceof MethodInsnNode && ((MethodInsnNode) n).owner.equals("battlecode/engine/instrumenter/lang/BytecodeCounter");
+    }
+
+}
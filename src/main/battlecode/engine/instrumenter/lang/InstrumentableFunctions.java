@@ -1,26 +1,30 @@
 package battlecode.engine.instrumenter.lang;
 
+import battlecode.engine.instrumenter.RobotMonitor;
+import battlecode.engine.scheduler.Scheduler;
+
 import java.util.Random;
 import java.util.regex.Pattern;
 
 // This class allows us to instrument certain string operations.
 // The instrumenter replaces calls to java.lang.String methods,
 // which are not instrumented, with these methods, which are.
+// This class may be shared by every robot on a team, so it must
+// not have any static state of its own.
 
 public class InstrumentableFunctions {
     private InstrumentableFunctions() {
     }
 
-    static private Random rnd;
-
     static public double random() {
         return getRandom().nextDouble();
     }
 
     static private Random getRandom() {
-        if (rnd == null)
-            rnd = new Random(RoboRandom.getMapSeed());
-        return rnd;
+        RobotMonitor.RobotData data = Scheduler.getOwnRobotData();
+        if (data.random == null)
+            data.random = new Random(RoboRandom.getMapSeed());
+        return (Random) data.random;
     }
 
     static public boolean matches(String str, String regex) {
@@ -1,11 +1,23 @@
 package battlecode.engine.instrumenter.lang;
 
 import battlecode.engine.ErrorReporter;
-import org.hibernate.search.util.WeakIdentityHashMap;
+import battlecode.engine.instrumenter.RobotMonitor;
+import battlecode.engine.scheduler.Scheduler;
 
 import java.lang.reflect.Method;
-import java.util.HashMap;
+import java.util.IdentityHashMap;
 
+/**
+ * Deterministic replacements for Object.hashCode and System.identityHashCode.  Each robot numbers the objects it
+ * hashes on its own, starting from 0, so that it isn't possible to send messages by calling hashCode repeatedly.
+ * The numbering is kept in the robot's RobotData rather than in this class, because instrumented library classes,
+ * and so their calls to this class, may be shared by every robot on a team.
+ * <p/>
+ * Like BytecodeCounter, each robot's loader, and each team's loader for shared library classes, has its own copy
+ * of this class, which finds the running robot through the loader's copy of BytecodeCounter rather than through
+ * the robot's thread.  The copies only use State's public methods, since they aren't in the same runtime package
+ * as State.
+ */
 public class ObjectHashCode {
 
     static final Method objectHashCode;
@@ -26,18 +38,74 @@ public class ObjectHashCode {
         characterHashCode = tmpc;
     }
 
-    static int lastHashCode = -1;
+    /**
+     * The hash codes handed out to one robot.
+     */
+    public static class State {
+        private int lastHashCode = -1;
+        // null can't go in codes, whose entries are dropped once their referent is gone
+        private int nullCode = -1;
 
-    static WeakIdentityHashMap<Object, Integer> codes = new WeakIdentityHashMap<Object, Integer>();
-    // reflection is slow so cache the results
-    static HashMap<Class, Boolean> usesOHC = new HashMap<Class, Boolean>();
+        private final WeakIdentityCodes codes = new WeakIdentityCodes();
+        // reflection is slow so cache the results; most calls in a row are for the same class, so check that first
+        private final IdentityHashMap<Class<?>, Boolean> usesOHC = new IdentityHashMap<Class<?>, Boolean>();
+        private Class<?> lastClass;
+        private boolean lastUsesOHC;
+
+        /**
+         * Returns true if cl's hashCode is Object's, Enum's or Character's, which are replaced.
+         */
+        public boolean usesObjectHashCode(Class<?> cl) throws NoSuchMethodException {
+            if (cl == lastClass)
+                return lastUsesOHC;
+            Boolean b = usesOHC.get(cl);
+            if (b == null) {
+                Method hashCodeMethod = cl.getMethod("hashCode");
+                b = hashCodeMethod.equals(enumHashCode) ||
+                        hashCodeMethod.equals(objectHashCode) ||
+                        hashCodeMethod.equals(characterHashCode);
+                usesOHC.put(cl, b);
+            }
+            lastClass = cl;
+            lastUsesOHC = b;
+            return b;
+        }
+
+        /**
+         * Returns the code handed out for o, handing out the next one if o doesn't have one yet.
+         */
+        public int identityHashCode(Object o) {
+            if (o == null) {
+                if (nullCode < 0)
+                    nullCode = ++lastHashCode;
+                return nullCode;
+            }
+            int code = codes.get(o);
+            if (code < 0) {
+                code = ++lastHashCode;
+                codes.put(o, code);
+            }
+            return code;
+        }
+    }
+
+    // used when no robot is running, e.g. by the engine's own thread
+    private static final State engineState = new State();
+
+    private static State state() {
+        RobotMonitor.RobotData data = BytecodeCounter.data;
+        if (data == null)
+            data = Scheduler.getOwnRobotData();
+        return data == null ? engineState : data.hashCodes;
+    }
 
     static public int hashCode(int hash, Object o, Class<?> cl) throws NoSuchMethodException {
         int idHash = java.lang.System.identityHashCode(o);
         if (hash != idHash)
             return hash;
-        if (usesObjectHashCode(cl))
-            return identityHashCode(o);
+        State s = state();
+        if (s.usesObjectHashCode(cl))
+            return s.identityHashCode(o);
         else
             return hash;
     }
@@ -49,28 +117,11 @@ public class ObjectHashCode {
         int idHash = java.lang.System.identityHashCode(o);
         if (hash != idHash)
             return hash;
-        return identityHashCode(o);
-    }
-
-    static private boolean usesObjectHashCode(Class<?> cl) throws NoSuchMethodException {
-        Boolean b = usesOHC.get(cl);
-        if (b == null) {
-            Method hashCodeMethod = cl.getMethod("hashCode");
-            b = hashCodeMethod.equals(enumHashCode) ||
-                    hashCodeMethod.equals(objectHashCode) ||
-                    hashCodeMethod.equals(characterHashCode);
-            usesOHC.put(cl, b);
-        }
-        return b;
+        return state().identityHashCode(o);
     }
 
     static public int identityHashCode(Object o) {
-        Integer code = codes.get(o);
-        if (code == null) {
-            codes.put(o, ++lastHashCode);
-            return lastHashCode;
-        } else
-            return code;
+        return state().identityHashCode(o);
     }
 
     private ObjectHashCode() {
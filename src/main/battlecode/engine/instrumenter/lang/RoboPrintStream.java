@@ -14,9 +14,23 @@ import java.io.PrintStream;
  */
 public class RoboPrintStream extends PrintStream {
 
-    private boolean alreadyInLine = false;
+    /**
+     * The part of the stream that depends on which robot is running.  Each match keeps its own State
+     * (see RobotMonitor), so matches running side by side don't share a header or a half-printed line.
+     */
+    public static class State {
 
-    private String header;
+        private boolean alreadyInLine = false;
+
+        private boolean silenced = false;
+
+        private String header;
+
+        public void changeRobot(boolean silenced) {
+            this.silenced = silenced;
+            header = null;
+        }
+    }
 
     private static RoboPrintStream theInstance = new RoboPrintStream();
 
@@ -33,39 +47,66 @@ public class RoboPrintStream extends PrintStream {
     //************************
 
     public void print(boolean b) {
-        printHelper(String.valueOf(b));
+        State state = RobotMonitor.getPrintState();
+        if (state.silenced)
+            return;
+        printHelper(state, String.valueOf(b));
     }
 
     public void print(char c) {
-        printHelper(String.valueOf(c));
+        State state = RobotMonitor.getPrintState();
+        if (state.silenced)
+            return;
+        printHelper(state, String.valueOf(c));
     }
 
     public void print(char[] s) {
-        printHelper(String.valueOf(s));
+        State state = RobotMonitor.getPrintState();
+        if (state.silenced)
+            return;
+        printHelper(state, String.valueOf(s));
     }
 
     public void print(double d) {
-        printHelper(String.valueOf(d));
+        State state = RobotMonitor.getPrintState();
+        if (state.silenced)
+            return;
+        printHelper(state, String.valueOf(d));
     }
 
     public void print(float f) {
-        printHelper(String.valueOf(f));
+        State state = RobotMonitor.getPrintState();
+        if (state.silenced)
+            return;
+        printHelper(state, String.valueOf(f));
     }
 
     public void print(int i) {
-        printHelper(String.valueOf(i));
+        State state = RobotMonitor.getPrintState();
+        if (state.silenced)
+            return;
+        printHelper(state, String.valueOf(i));
     }
 
     public void print(long l) {
-        printHelper(String.valueOf(l));
+        State state = RobotMonitor.getPrintState();
+        if (state.silenced)
+            return;
+        printHelper(state, String.valueOf(l));
     }
 
     public void print(Object obj) {
-        printHelper(String.valueOf(obj));
+        State state = RobotMonitor.getPrintState();
+        if (state.silenced)
+            return;
+        printHelper(state, String.valueOf(obj));
     }
 
     public void print(String s) {
-        printHelper(s);
+        State state = RobotMonitor.getPrintState();
+        if (state.silenced)
+            return;
+        printHelper(state, s);
     }
 
     //***************************
@@ -73,43 +114,73 @@ public class RoboPrintStream extends PrintStream {
     //***************************
 
     public void println(boolean b) {
-        printlnHelper(String.valueOf(b));
+        State state = RobotMonitor.getPrintState();
+        if (state.silenced)
+            return;
+        printlnHelper(state, String.valueOf(b));
     }
 
     public void println(char c) {
-        printlnHelper(String.valueOf(c));
+        State state = RobotMonitor.getPrintState();
+        if (state.silenced)
+            return;
+        printlnHelper(state, String.valueOf(c));
     }
 
     public void println(char[] s) {
-        printlnHelper(String.valueOf(s));
+        State state = RobotMonitor.getPrintState();
+        if (state.silenced)
+            return;
+        printlnHelper(state, String.valueOf(s));
     }
 
     public void println(double d) {
-        printlnHelper(String.valueOf(d));
+        State state = RobotMonitor.getPrintState();
+        if (state.silenced)
+            return;
+        printlnHelper(state, String.valueOf(d));
     }
 
     public void println(float f) {
-        printlnHelper(String.valueOf(f));
+        State state = RobotMonitor.getPrintState();
+        if (state.silenced)
+            return;
+        printlnHelper(state, String.valueOf(f));
     }
 
     public void println(int i) {
-        printlnHelper(String.valueOf(i));
+        State state = RobotMonitor.getPrintState();
+        if (state.silenced)
+            return;
+        printlnHelper(state, String.valueOf(i));
     }
 
     public void println(long l) {
-        printlnHelper(String.valueOf(l));
+        State state = RobotMonitor.getPrintState();
+        if (state.silenced)
+            return;
+        printlnHelper(state, String.valueOf(l));
     }
 
     public void println(Object obj) {
-        printlnHelper(String.valueOf(obj));
+        State state = RobotMonitor.getPrintState();
+        if (state.silenced)
+            return;
+        printlnHelper(state, String.valueOf(obj));
     }
 
     public void println(String s) {
-        printlnHelper(s);
+        State state = RobotMonitor.getPrintState();
+        if (state.silenced)
+            return;
+        printlnHelper(state, s);
     }
 
     public void println() {
-        printlnHelper("");
+        State state = RobotMonitor.getPrintState();
+        if (state.silenced)
+            return;
+        printlnHelper(state, "");
     }
 
     //*************************
@@ -117,17 +188,26 @@ public class RoboPrintStream extends PrintStream {
     //*************************
 
     public PrintStream append(char c) {
-        this.printHelper(String.valueOf(c));
+        State state = RobotMonitor.getPrintState();
+        if (state.silenced)
+            return this;
+        printHelper(state, String.valueOf(c));
         return this;
     }
 
     public PrintStream append(CharSequence csq) {
-        this.printHelper(String.valueOf(csq));
+        State state = RobotMonitor.getPrintState();
+        if (state.silenced)
+            return this;
+        printHelper(state, String.valueOf(csq));
         return this;
     }
 
     public PrintStream append(CharSequence csq, int start, int end) {
-        this.printHelper(csq.subSequence(start, end).toString());
+        State state = RobotMonitor.getPrintState();
+        if (state.silenced)
+            return this;
+        printHelper(state, csq.subSequence(start, end).toString());
         return this;
     }
 
@@ -143,52 +223,64 @@ public class RoboPrintStream extends PrintStream {
     }
 
     public PrintStream format(String format, Object... args) {
-        this.printHelper(String.format(format, args));
+        State state = RobotMonitor.getPrintState();
+        if (state.silenced)
+            return this;
+        printHelper(state, String.format(format, args));
         return this;
     }
 
     public PrintStream printf(String format, Object... args) {
-        this.printHelper(String.format(format, args));
+        State state = RobotMonitor.getPrintState();
+        if (state.silenced)
+            return this;
+        printHelper(state, String.format(format, args));
         return this;
     }
 
     public void write(byte[] buf, int off, int len) {
-        this.printHelper(new String(buf, off, len));
+        State state = RobotMonitor.getPrintState();
+        if (state.silenced)
+            return;
+        printHelper(state, new String(buf, off, len));
     }
 
     public void write(int b) {
-        this.printHelper(String.valueOf((char) b));
+        State state = RobotMonitor.getPrintState();
+        if (state.silenced)
+            return;
+        printHelper(state, String.valueOf((char) b));
     }
 
     //**************************
     //*** HELPER METHODS ***
     //**************************
 
-    public void changeRobot() {
-        header = null;
-    }
+    // Every method above checks whether the robot is silenced before it turns anything into a string, since
+    // that can call the player's toString, which costs bytecodes.  Silenced robots have to run exactly as they
+    // would if nothing were printed.
 
-    private void checkHeader() {
-        if (header == null) {
-            header = String.format("[%s@%d] ", RobotMonitor.getCurrentRobot().toString(), Engine.getRoundNum());
+    private void checkHeader(State state) {
+        if (state.header == null) {
+            state.header = String.format("[%s@%d] ", RobotMonitor.getCurrentRobot().toString(), Engine.getRoundNum());
         }
     }
 
-    private void printHelper(String s) {
-        checkHeader();
-        if (!alreadyInLine)
-            java.lang.System.out.print(header);
+    private void printHelper(State state, String s) {
+        checkHeader(state);
+        if (!state.alreadyInLine)
+            java.lang.System.out.print(state.header);
         java.lang.System.out.print(s);
-        alreadyInLine = true;
+        state.alreadyInLine = true;
     }
 
-    private void printlnHelper(String s) {
-        checkHeader();
-        if (!alreadyInLine) {
-            java.lang.System.out.print(header);
+    private void printlnHelper(State state, String s) {
+        checkHeader(state);
+        if (!state.alreadyInLine) {
+            java.lang.System.out.print(state.header);
         }
         java.lang.System.out.println(s);
-        alreadyInLine = false;
+        state.alreadyInLine = false;
     }
 
 }
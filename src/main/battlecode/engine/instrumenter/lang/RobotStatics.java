@@ -0,0 +1,45 @@
+package battlecode.engine.instrumenter.lang;
+
+import battlecode.engine.instrumenter.RobotMonitor;
+import battlecode.engine.scheduler.Scheduler;
+
+import java.util.Arrays;
+
+/**
+ * Finds the running robot's copies of the static fields that the instrumenter has moved out of a team's classes,
+ * when every robot on the team shares one class loader (see bc.engine.shared-team-loader and PerRobotStatics).
+ * Each holder class has an index into the robot's RobotData.statics.
+ * <p/>
+ * Like BytecodeCounter, each team's loader has its own copy of this class, which finds the running robot through
+ * the loader's copy of BytecodeCounter.
+ */
+public final class RobotStatics {
+
+    private RobotStatics() {
+    }
+
+    /**
+     * Returns the running robot's instance of the holder class with the given index, or null if the robot hasn't
+     * initialized that class yet.
+     */
+    public static Object get(int index) {
+        Object[] statics = data().statics;
+        return index < statics.length ? statics[index] : null;
+    }
+
+    /**
+     * Stores the running robot's instance of the holder class with the given index.
+     */
+    public static void put(int index, Object holder) {
+        RobotMonitor.RobotData d = data();
+        if (index >= d.statics.length)
+            d.statics = Arrays.copyOf(d.statics, Math.max(index + 1, 2 * d.statics.length));
+        d.statics[index] = holder;
+    }
+
+    private static RobotMonitor.RobotData data() {
+        RobotMonitor.RobotData d = BytecodeCounter.data;
+        return d != null ? d : Scheduler.getOwnRobotData();
+    }
+
+}
@@ -42,9 +42,9 @@ public final class System {
         return (s == null) ? def : s;
     }
 
-    // set by RobotMonitor
-    public static PrintStream out;
-    public static PrintStream err;
+    // RoboPrintStream looks up which robot is running (and whether it is silenced) on every call
+    public static PrintStream out = RoboPrintStream.theInstance();
+    public static PrintStream err = RoboPrintStream.theInstance();
     public static InputStream in = new InputStream() {
         public int read() throws java.io.IOException {
             throw new java.io.EOFException();
@@ -0,0 +1,103 @@
+package battlecode.engine.instrumenter.lang;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * Maps objects, by identity, to the hash codes that ObjectHashCode has handed out for them, without keeping the
+ * objects alive.  This is a WeakIdentityHashMap<Object, Integer> cut down to what ObjectHashCode needs: an open
+ * addressing table of weak references that carry their code as an int, so that adding an object allocates one
+ * small object, and looking one up allocates nothing.
+ * <p/>
+ * Entries whose objects have been collected stay in the table until it fills up, and are then dropped when the
+ * table is rebuilt.
+ */
+final class WeakIdentityCodes {
+
+    private static final class Entry extends WeakReference<Object> {
+        final int hash;
+        final int code;
+
+        Entry(Object key, int hash, int code, ReferenceQueue<Object> queue) {
+            super(key, queue);
+            this.hash = hash;
+            this.code = code;
+        }
+    }
+
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+    private Entry[] table = new Entry[64];
+    // the number of entries in the table, including ones whose objects have been collected
+    private int size;
+
+    /**
+     * Returns the code for the given object, or -1 if it doesn't have one.  The object must not be null.
+     */
+    int get(Object o) {
+        int h = hash(o);
+        Entry[] t = table;
+        int mask = t.length - 1;
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            Entry e = t[i];
+            if (e == null)
+                return -1;
+            if (e.hash == h && e.get() == o)
+                return e.code;
+        }
+    }
+
+    /**
+     * Gives the object a code.  The object must not be null or already have one, and the code must not be
+     * negative.
+     */
+    void put(Object o, int code) {
+        if (size >= table.length - (table.length >> 2))
+            rebuild();
+        int h = hash(o);
+        insert(table, new Entry(o, h, code, queue));
+        size++;
+    }
+
+    private static void insert(Entry[] t, Entry e) {
+        int mask = t.length - 1;
+        int i = e.hash & mask;
+        while (t[i] != null)
+            i = (i + 1) & mask;
+        t[i] = e;
+    }
+
+    /**
+     * Drops the entries whose objects have been collected, and doubles the table if it is still more than half
+     * full.
+     */
+    private void rebuild() {
+        boolean collected = false;
+        while (queue.poll() != null)
+            collected = true;
+        int live = 0;
+        if (collected) {
+            for (Entry e : table) {
+                if (e != null && e.get() != null)
+                    live++;
+            }
+        } else
+            live = size;
+        int capacity = table.length;
+        while (live >= capacity >> 1)
+            capacity <<= 1;
+        Entry[] t = new Entry[capacity];
+        for (Entry e : table) {
+            if (e != null && e.get() != null)
+                insert(t, e);
+        }
+        table = t;
+        size = live;
+    }
+
+    // identityHashCode has poor low bits on some JVMs, so spread the high bits down
+    private static int hash(Object o) {
+        int h = java.lang.System.identityHashCode(o);
+        return h ^ (h >>> 16);
+    }
+
+}
@@ -0,0 +1,37 @@
+package battlecode.engine.scheduler;
+
+/**
+ * An ExecutionBackend creates the threads that robots run in.  The Scheduler only ever lets one of these
+ * threads run at a time, so a backend decides what a robot turn costs (thread creation, context switches),
+ * but never the order in which robots run.
+ * <p/>
+ * Each match gets its own backend from {@link ExecutionBackendFactory}.
+ */
+public interface ExecutionBackend {
+
+    /**
+     * Returns a thread that will run the given Runnable once it is passed to {@link #start}.  The thread may be
+     * a new one, or one that the backend is reusing.
+     *
+     * @param r    the Runnable the thread should run
+     * @param name the name to give the thread
+     */
+    public Thread newThread(Runnable r, String name);
+
+    /**
+     * Lets a thread returned by {@link #newThread} begin running its Runnable.
+     */
+    public void start(Thread t);
+
+    /**
+     * Returns true if a robot thread can usefully spin while it waits for its turn.  This is false when spinning
+     * would just keep the thread it is waiting for from running, e.g., when they share a single CPU or carrier.
+     */
+    public boolean canSpin();
+
+    /**
+     * Releases any resources held by the backend.  Should be called once all of the match's robot threads have exited.
+     */
+    public void shutdown();
+
+}
@@ -0,0 +1,36 @@
+package battlecode.engine.scheduler;
+
+import battlecode.server.Config;
+
+/**
+ * This class is a factory for ExecutionBackends.  The backend is chosen by the bc.engine.thread-backend option,
+ * which may be "platform" (a new OS thread per robot, the default), "pooled" (OS threads reused across robots and
+ * matches) or "virtual" (virtual threads, when the JVM supports them).
+ */
+public class ExecutionBackendFactory {
+
+    private static boolean warnedVirtualUnavailable = false;
+
+    private ExecutionBackendFactory() {
+    }
+
+    public static ExecutionBackend createBackend(Config options) {
+        String backend = options.get("bc.engine.thread-backend");
+        if ("virtual".equalsIgnoreCase(backend)) {
+            if (VirtualThreadBackend.isAvailable())
+                return new VirtualThreadBackend();
+            synchronized (ExecutionBackendFactory.class) {
+                if (!warnedVirtualUnavailable) {
+                    warnedVirtualUnavailable = true;
+                    System.out.println("[Engine] Virtual threads are not supported by this JVM, so robots will run in platform threads.");
+                }
+            }
+        } else if ("pooled".equalsIgnoreCase(backend)) {
+            return new PooledThreadBackend();
+        } else if (!"platform".equalsIgnoreCase(backend)) {
+            System.out.println("[Engine] Unknown thread backend \"" + backend + "\", so robots will run in platform threads.");
+        }
+        return new PlatformThreadBackend();
+    }
+
+}
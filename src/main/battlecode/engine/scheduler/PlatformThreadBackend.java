@@ -0,0 +1,25 @@
+package battlecode.engine.scheduler;
+
+/**
+ * The default ExecutionBackend, which runs every robot in its own platform (OS) thread.
+ */
+public class PlatformThreadBackend implements ExecutionBackend {
+
+    public Thread newThread(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    public void start(Thread t) {
+        t.start();
+    }
+
+    public boolean canSpin() {
+        return Runtime.getRuntime().availableProcessors() > 1;
+    }
+
+    public void shutdown() {
+    }
+
+}
@@ -0,0 +1,128 @@
+package battlecode.engine.scheduler;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An ExecutionBackend that keeps robot threads around after their robots die, and hands them to the next robots
+ * that are spawned, so that a spawn usually doesn't create an OS thread.  The pool is shared by every match in the
+ * JVM, so threads are also reused from one match to the next.  A thread that stays idle for IDLE_TIMEOUT_SECONDS
+ * exits.
+ * <p/>
+ * Between robots, a thread's name, context class loader, priority and interrupt status are put back the way they
+ * were when the thread was created, and ScheduledRunnable clears the engine's ThreadLocals.  Other ThreadLocals
+ * that a robot's run touched, e.g. in library code, are not cleared.
+ */
+public class PooledThreadBackend implements ExecutionBackend {
+
+    private static final long IDLE_TIMEOUT_SECONDS = 60;
+
+    // threads waiting for work; a thread may also be in here after it has timed out, see Worker.state
+    private static final ConcurrentLinkedQueue<Worker> idle = new ConcurrentLinkedQueue<Worker>();
+
+    private static final AtomicInteger workerCount = new AtomicInteger();
+
+    private static class Worker extends Thread {
+
+        static final int IDLE = 0, ASSIGNED = 1, RUNNING = 2, DEAD = 3;
+
+        final AtomicInteger state = new AtomicInteger(ASSIGNED);
+
+        // the Runnable to run next; written before state is set to RUNNING
+        Runnable task;
+
+        // what a task may have changed, to be put back before the next one
+        private final ClassLoader initialLoader;
+        private final int initialPriority;
+
+        Worker() {
+            super("robot pool " + workerCount.incrementAndGet());
+            setDaemon(true);
+            initialLoader = getContextClassLoader();
+            initialPriority = getPriority();
+        }
+
+        /**
+         * Claims this worker for a new task.
+         *
+         * @return false if the worker has already timed out
+         */
+        boolean claim() {
+            return state.compareAndSet(IDLE, ASSIGNED);
+        }
+
+        void release() {
+            state.set(RUNNING);
+            LockSupport.unpark(this);
+        }
+
+        public void run() {
+            while (awaitTask()) {
+                Runnable r = task;
+                task = null;
+                r.run();
+                reset();
+                state.set(IDLE);
+                idle.add(this);
+            }
+        }
+
+        private void reset() {
+            setName("robot pool idle");
+            setContextClassLoader(initialLoader);
+            setPriority(initialPriority);
+            Thread.interrupted();
+        }
+
+        /**
+         * Waits until this worker is given a task.
+         *
+         * @return false if no task came before the idle timeout
+         */
+        private boolean awaitTask() {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(IDLE_TIMEOUT_SECONDS);
+            while (state.get() != RUNNING) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0 && state.compareAndSet(IDLE, DEAD)) {
+                    idle.remove(this);
+                    return false;
+                }
+                // once we are ASSIGNED, a release is coming, so we wait for it however long it takes
+                LockSupport.parkNanos(this, left > 0 ? left : TimeUnit.SECONDS.toNanos(1));
+            }
+            return true;
+        }
+    }
+
+    public Thread newThread(Runnable r, String name) {
+        Worker w;
+        do {
+            w = idle.poll();
+        } while (w != null && !w.claim());
+        if (w == null) {
+            w = new Worker();
+            w.task = r;
+            w.setName(name);
+            w.start();
+        } else {
+            w.task = r;
+            w.setName(name);
+        }
+        return w;
+    }
+
+    public void start(Thread t) {
+        ((Worker) t).release();
+    }
+
+    public boolean canSpin() {
+        return Runtime.getRuntime().availableProcessors() > 1;
+    }
+
+    public void shutdown() {
+        // the pool outlives the match
+    }
+
+}
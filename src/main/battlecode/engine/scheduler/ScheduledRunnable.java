@@ -1,29 +1,42 @@
 package battlecode.engine.scheduler;
 
+import battlecode.engine.EngineContext;
 import battlecode.engine.ErrorReporter;
+import battlecode.engine.instrumenter.RobotMonitor;
 
 /**
  * ScheduledRunnable is a wrapper for a Runnable, that runs the embedded Runnable in a new thread that is locked into the Scheduler.
+ * The thread is created by the match's ExecutionBackend.
  *
  * @author adamd
  */
 public class ScheduledRunnable implements Runnable {
     private final int myID;        // the runnable's ID
     private final Runnable myRunnable;
+    private final EngineContext myContext;    // the match the runnable belongs to
+    private final Scheduler.ScheduledThread myThread;    // the runnable's entry in the Scheduler's ring
 
     /**
      * Creates and runs a new thread that is locked into the Scheduler and runs the given Runnable.
      *
-     * @param r  the Runnable to be run in the Scheduler
-     * @param ID the integer ID that the Scheduler will associate with the given Runnable's thread
+     * @param context the context of the match the thread belongs to
+     * @param r       the Runnable to be run in the Scheduler
+     * @param ID      the integer ID that the Scheduler will associate with the given Runnable's thread
      */
-    public ScheduledRunnable(Runnable r, int ID) {
+    public ScheduledRunnable(EngineContext context, Runnable r, int ID) {
         myID = ID;
         myRunnable = r;
-        Thread t = new Thread(this, "robot " + ID);
-        t.setDaemon(true);
-        Scheduler.add(t, ID);
-        t.start();
+        myContext = context;
+        Thread t = context.getExecutionBackend().newThread(this, "robot " + ID);
+        myThread = context.getScheduler().add(t, ID);
+        context.getExecutionBackend().start(t);
+    }
+
+    /**
+     * Returns the RobotData that the Scheduler and RobotMonitor keep for this runnable's thread.
+     */
+    public RobotMonitor.RobotData getRobotData() {
+        return myThread.data;
     }
 
     /**
@@ -31,6 +44,8 @@ public class ScheduledRunnable implements Runnable {
      */
     public void run() {
 
+        myContext.bind();
+        myContext.getScheduler().enter(myThread);
 
         try {
 
@@ -40,7 +55,9 @@ public class ScheduledRunnable implements Runnable {
             e.printStackTrace();
             ErrorReporter.report("Unexpected exception in ScheduledRunnable: " + e.getMessage());
         } finally {
-            Scheduler.die();
+            myContext.getScheduler().die(myThread);
+            // the thread may be reused by another match
+            EngineContext.unbind();
         }
     }
 }
@@ -1,11 +1,27 @@
 package battlecode.engine.scheduler;
 
+import battlecode.engine.EngineMetrics;
 import battlecode.engine.ErrorReporter;
+import battlecode.engine.instrumenter.RobotDeathException;
 import battlecode.engine.instrumenter.RobotMonitor;
 
+import java.util.BitSet;
 import java.util.concurrent.locks.LockSupport;
 
 
+/**
+ * Scheduler keeps the ring of threads for one match and hands control from each thread to the next in strict
+ * round-robin order.  Each match has its own Scheduler (see {@link battlecode.engine.EngineContext}).
+ * <p/>
+ * A thread waiting for its turn first spins (yielding now and then) for up to spinNanos nanoseconds, and only
+ * parks if its turn still hasn't come.  On a machine with spare cores, most handoffs then complete without
+ * going through the kernel.  A spinNanos of zero always parks right away.
+ * <p/>
+ * When a robot is killed, its thread is unlinked from the ring right away, so the rest of the game never has to
+ * hand control to it again.  The dead thread is then woken up to throw a RobotDeathException and exit on its own,
+ * alongside whichever thread has the turn.  A dead thread only unwinds the robot's stack while it exits, and
+ * doesn't touch the game world or the ring.
+ */
 public class Scheduler {
 
     public static class ScheduledThread {
@@ -13,6 +29,8 @@ public class Scheduler {
         volatile ScheduledThread prev;
         Thread thread;
         volatile boolean started;
+        // set when the robot is killed; a dead thread is never given the turn again
+        volatile boolean dead;
         RobotMonitor.RobotData data;
 
         private ScheduledThread(Thread thread, RobotMonitor.RobotData data) {
@@ -22,20 +40,58 @@ public class Scheduler {
         }
     }
 
-    private volatile static ScheduledThread head, current;
+    // how many times a waiting thread spins between checks of the clock
+    private static final int SPINS_PER_CHECK = 64;
 
-    static {
+    // the ScheduledThread of each robot thread, so the thread can find itself
+    private static final ThreadLocal<ScheduledThread> ownThread = new ThreadLocal<ScheduledThread>();
+
+    private final RobotMonitor monitor;
+    private final long spinNanos;
+    private final EngineMetrics metrics;
+
+    private volatile ScheduledThread head, current;
+
+    // only updated by the thread whose turn it is, so they don't need to be synchronized
+    private long spinHandoffs, parkedHandoffs;
+
+    // when the last handoff began; written before current, so the woken thread sees it
+    private long handoffStart;
+
+    // the threads in the ring, indexed by robot ID (robot IDs are small and dense)
+    private ScheduledThread[] threadsByID = new ScheduledThread[256];
+
+    // the IDs of every robot that has been killed, including robots that were killed before their thread was added
+    private final BitSet killed = new BitSet();
+
+    public Scheduler(RobotMonitor monitor) {
+        this(monitor, 0, null);
+    }
+
+    /**
+     * @param monitor   the RobotMonitor to notify whenever a robot's turn begins
+     * @param spinNanos how long a waiting thread spins before it parks, in nanoseconds
+     * @param metrics   where to record handoff latencies, or null to not record them
+     */
+    public Scheduler(RobotMonitor monitor, long spinNanos, EngineMetrics metrics) {
+        this.monitor = monitor;
+        this.spinNanos = spinNanos;
+        this.metrics = metrics;
         head = new ScheduledThread(null, new RobotMonitor.RobotData(-1));
         head.next = head;
         head.prev = head;
         current = head;
     }
 
-    public static void start() {
+    public void start() {
         head.thread = Thread.currentThread();
     }
 
-    public static void reset() {
+    /**
+     * Reports an error if any robot threads are still in the ring.  Should be called after
+     * the robot threads have been told to exit at the end of the game.
+     */
+    public void reset() {
         if (head.next != head) {
             ErrorReporter.report("Failed to clean up all threads");
         }
@@ -43,22 +99,87 @@ public class Scheduler {
 
     /**
      * Adds a new thread to the scheduler.
+     *
+     * @return the thread's entry in the ring, which the thread should pass to {@link #enter} when it starts
      */
-    public static void add(Thread t, int ID) {
+    public ScheduledThread add(Thread t, int ID) {
         ScheduledThread st = new ScheduledThread(t, new RobotMonitor.RobotData(ID));
+        if (killed.get(ID)) {
+            // the robot died before its thread was ready; it will exit as soon as it starts
+            st.dead = true;
+            st.data.killed = true;
+            return st;
+        }
+        if (ID >= threadsByID.length) {
+            ScheduledThread[] grown = new ScheduledThread[Math.max(threadsByID.length * 2, ID + 1)];
+            java.lang.System.arraycopy(threadsByID, 0, grown, 0, threadsByID.length);
+            threadsByID = grown;
+        }
+        threadsByID[ID] = st;
         ScheduledThread last = head.prev;
         last.next = st;
         st.prev = last;
         head.prev = st;
         st.next = head;
+        return st;
+    }
+
+    /**
+     * Associates the calling thread with its entry in the ring.  Robot threads should call this as soon as they start.
+     */
+    public void enter(ScheduledThread st) {
+        ownThread.set(st);
     }
 
     /**
-     * Removes the current thread from the scheduler.
+     * Returns the RobotData of the robot that the calling thread runs, or null if the calling thread isn't a
+     * robot thread.  Unlike RobotMonitor.getCurrentRobotData, this is correct even in a thread that is exiting
+     * after its robot was killed.
+     */
+    public static RobotMonitor.RobotData getOwnRobotData() {
+        ScheduledThread st = ownThread.get();
+        return st == null ? null : st.data;
+    }
+
+    /**
+     * Kills the robot with the given ID.  Its thread is unlinked from the ring and told to exit.  If the robot
+     * is the one whose turn it is, it is unlinked when it ends its turn instead.  Must be called by the thread
+     * whose turn it is.
+     */
+    public void kill(int ID) {
+        killed.set(ID);
+        ScheduledThread st = ID < threadsByID.length ? threadsByID[ID] : null;
+        if (st == null)
+            return;
+        threadsByID[ID] = null;
+        st.data.killed = true;
+        st.dead = true;
+        if (st != current) {
+            unlink(st);
+            LockSupport.unpark(st.thread);
+        }
+    }
+
+    private void unlink(ScheduledThread st) {
+        ScheduledThread last = st.prev;
+        ScheduledThread next = st.next;
+        last.next = next;
+        next.prev = last;
+    }
+
+    /**
+     * Removes the given thread from the scheduler.
      * Should be called right before the thread exits.
-     * n
      */
-    public static void die() {
+    public void die(ScheduledThread st) {
+        ownThread.remove();
+        if (st != current) {
+            // the robot was killed, and its thread was unlinked then
+            return;
+        }
+        if (metrics != null)
+            handoffStart = System.nanoTime();
+        threadsByID[st.data.ID] = null;
         ScheduledThread last = current.prev;
         current = current.next;
         current.prev = last;
@@ -70,7 +191,7 @@ public class Scheduler {
      * Wakes up the next thread.  Should be followed by a
      * call to endTurn().
      */
-    private static void wakeupNext() {
+    private void wakeupNext() {
         LockSupport.unpark(current.thread);
     }
 
@@ -78,26 +199,77 @@ public class Scheduler {
      * Ends this thread's turn, but does not wake up the next thread.
      * New robot threads should call this immediately after starting.
      */
-    public static void endTurn() {
-        // we need do-while rather than while in case the current thread
-        // is also the next thread
-        do {
-            LockSupport.park();
-        } while (current.thread != Thread.currentThread());
-        RobotMonitor.switchRunner(current.data);
+    public void endTurn() {
+        ScheduledThread me = ownThread.get();
+        waitForTurn(me == null ? head : me);
+    }
+
+    /**
+     * Waits until it is the given thread's turn.
+     *
+     * @throws RobotDeathException if the thread's robot is killed while it waits
+     */
+    private void waitForTurn(ScheduledThread me) {
+        boolean spun = spinNanos > 0 && spinUntilTurn(me);
+        if (!spun) {
+            // we need do-while rather than while in case the current thread
+            // is also the next thread
+            do {
+                LockSupport.park();
+            } while (current != me && !me.dead);
+        }
+        if (me.dead)
+            // we don't have the turn, so don't touch anything else
+            throw new RobotDeathException();
+        if (spun)
+            spinHandoffs++;
+        else
+            parkedHandoffs++;
+        if (metrics != null)
+            metrics.recordHandoff(System.nanoTime() - handoffStart);
+        monitor.switchRunner(current.data);
+    }
+
+    /**
+     * Busy-waits until it is the given thread's turn, or until spinNanos have passed.
+     *
+     * @return true if it became the thread's turn (or was killed) while spinning
+     */
+    private boolean spinUntilTurn(ScheduledThread me) {
+        long deadline = System.nanoTime() + spinNanos;
+        int spins = 0;
+        while (current != me && !me.dead) {
+            if (++spins == SPINS_PER_CHECK) {
+                if (System.nanoTime() - deadline >= 0)
+                    return false;
+                spins = 0;
+                Thread.yield();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of handoffs in which the waiting thread got its turn while spinning.
+     */
+    public long getSpinHandoffs() {
+        return spinHandoffs;
     }
 
-    //static private volatile long enterTime;
-    //static public volatile long timeInScheduler;
+    /**
+     * Returns the number of handoffs in which the waiting thread had to park.
+     */
+    public long getParkedHandoffs() {
+        return parkedHandoffs;
+    }
 
     /**
      * Ends this thread's turn and wakes up the next thread.
      */
-    public static void passToNextThread() {
-        //enterTime = System.nanoTime();
+    public void passToNextThread() {
+        ScheduledThread me = current;
         startNextThread();
-        endTurn();
-        //timeInScheduler+=System.nanoTime()-enterTime;
+        waitForTurn(me);
     }
 
     /**
@@ -105,8 +277,15 @@ public class Scheduler {
      * by the engine so it can write the match to disk while
      * robots are running.
      */
-    public static void startNextThread() {
-        current = current.next;
+    public void startNextThread() {
+        if (metrics != null)
+            handoffStart = System.nanoTime();
+        ScheduledThread last = current;
+        ScheduledThread next = last.next;
+        if (last.dead)
+            // the robot was killed during its own turn; unlink it before the next thread can touch the ring
+            unlink(last);
+        current = next;
         wakeupNext();
     }
 
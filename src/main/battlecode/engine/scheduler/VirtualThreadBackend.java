@@ -0,0 +1,117 @@
+package battlecode.engine.scheduler;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * An ExecutionBackend that runs robots as virtual threads, so that spawning a robot doesn't create an OS thread
+ * and handing control from one robot to the next doesn't need a kernel context switch.
+ * <p/>
+ * Virtual threads only exist on Java 21 and later, so they are created through reflection.  When possible, all of a
+ * match's robots are mounted on a single carrier thread, since the Scheduler never lets more than one of them run at
+ * once anyway.  That needs the JDK's internal builder, which is only accessible when the JVM is started with
+ * <code>--add-opens java.base/java.lang=ALL-UNNAMED</code>; otherwise the JDK's default virtual thread scheduler is
+ * used.  Use {@link #isAvailable()} to check whether virtual threads can be created at all.
+ */
+public class VirtualThreadBackend implements ExecutionBackend {
+
+    private static final Method ofVirtual;
+    private static final Constructor<?> carrierBuilder;
+    private static final Method builderName;
+    private static final Method builderUnstarted;
+
+    static {
+        Method ov = null, name = null, unstarted = null;
+        Constructor<?> cb = null;
+        try {
+            ov = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            name = builder.getMethod("name", String.class);
+            unstarted = builder.getMethod("unstarted", Runnable.class);
+        } catch (Exception e) {
+            // no virtual threads on this JVM
+            ov = null;
+        }
+        if (ov != null) {
+            try {
+                cb = Class.forName("java.lang.ThreadBuilders$VirtualThreadBuilder").getDeclaredConstructor(Executor.class);
+                cb.setAccessible(true);
+            } catch (Exception e) {
+                // java.lang is not open to us, so we can't choose the carrier
+                cb = null;
+            }
+        }
+        ofVirtual = ov;
+        carrierBuilder = cb;
+        builderName = name;
+        builderUnstarted = unstarted;
+    }
+
+    /**
+     * Returns true if this JVM supports virtual threads.
+     */
+    public static boolean isAvailable() {
+        return ofVirtual != null;
+    }
+
+    // the single carrier thread that the match's robots run on, or null if the JDK's scheduler is used
+    private final ExecutorService carrier;
+
+    public VirtualThreadBackend() {
+        if (!isAvailable())
+            throw new IllegalStateException("virtual threads are not supported by this JVM");
+        if (carrierBuilder != null) {
+            carrier = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "robot carrier");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        } else
+            carrier = null;
+    }
+
+    /**
+     * Returns true if this backend's robots all share a single carrier thread.
+     */
+    public boolean hasSingleCarrier() {
+        return carrier != null;
+    }
+
+    public Thread newThread(Runnable r, String name) {
+        try {
+            Object builder;
+            if (carrier != null)
+                builder = carrierBuilder.newInstance(carrier);
+            else
+                builder = ofVirtual.invoke(null);
+            builderName.invoke(builder, name);
+            return (Thread) builderUnstarted.invoke(builder, r);
+        } catch (InvocationTargetException e) {
+            throw new RuntimeException(e.getCause());
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void start(Thread t) {
+        t.start();
+    }
+
+    public boolean canSpin() {
+        // a spinning virtual thread holds on to its carrier, which the next robot may need
+        return false;
+    }
+
+    public void shutdown() {
+        if (carrier != null)
+            carrier.shutdown();
+    }
+
+}
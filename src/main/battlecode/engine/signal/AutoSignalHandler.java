@@ -1,9 +1,18 @@
 package battlecode.engine.signal;
 
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A signal handler that delegates to other signal handling methods, which it discovers
@@ -12,12 +21,70 @@ import java.util.HashMap;
  * - If the method has a {@link DiscoverSignal} annotation, that is respected.
  * - Otherwise, a method is discovered if it is public, its name starts with "visit", and it takes a single
  * parameter that is a subclass of {@link Signal} (but not Signal itself).
- * Currently it uses reflection, which is kind of inelegant and slow (but probably not slow enough to matter).  I guess we could avoid reflection and instead create classes on the fly.
+ * <p/>
+ * Methods are discovered with reflection, but they aren't called with it: for each method, a small Dispatcher
+ * class that calls it directly is generated with ASM, and for each class of signal, the dispatchers for it and its
+ * superclasses are looked up once and cached.  If a dispatcher can't be generated, it falls back on reflection.
  */
 public class AutoSignalHandler implements SignalHandler {
 
-    static HashMap<Class, HashMap<Class, Method>> metaMap = new HashMap<Class, HashMap<Class, Method>>();
-    HashMap<Class, Method> methodMap;
+    /**
+     * Calls one signal handling method.
+     */
+    public static abstract class Dispatcher {
+        public abstract void dispatch(Object handler, Signal signal) throws Exception;
+    }
+
+    private static class ReflectiveDispatcher extends Dispatcher {
+        private final Method method;
+
+        ReflectiveDispatcher(Method method) {
+            this.method = method;
+        }
+
+        public void dispatch(Object handler, Signal signal) throws Exception {
+            try {
+                method.invoke(handler, signal);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception)
+                    throw (Exception) cause;
+                if (cause instanceof Error)
+                    throw (Error) cause;
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Defines the generated dispatchers for one handler class.
+     */
+    private static class DispatcherLoader extends ClassLoader {
+        DispatcherLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] b) {
+            return defineClass(name, b, 0, b.length);
+        }
+    }
+
+    /**
+     * The dispatchers for one handler class.
+     */
+    private static class Dispatchers {
+        final HashMap<Method, Dispatcher> byMethod = new HashMap<Method, Dispatcher>();
+        // for each class of signal, the dispatchers for it and its superclasses, most specific first
+        final ConcurrentHashMap<Class<?>, Dispatcher[]> bySignal = new ConcurrentHashMap<Class<?>, Dispatcher[]>();
+        DispatcherLoader loader;
+    }
+
+    private static final AtomicInteger generatedCount = new AtomicInteger();
+
+    static HashMap<Class<?>, HashMap<Class<?>, Method>> metaMap = new HashMap<Class<?>, HashMap<Class<?>, Method>>();
+    static HashMap<Class<?>, Dispatchers> dispatcherMap = new HashMap<Class<?>, Dispatchers>();
+    HashMap<Class<?>, Method> methodMap;
+    private Dispatchers dispatchers;
     Object myObject;
 
     public AutoSignalHandler() {
@@ -30,12 +97,15 @@ public class AutoSignalHandler implements SignalHandler {
         discoverMethods(o.getClass());
     }
 
-    protected void discoverMethods(Class cls) {
+    protected void discoverMethods(Class<?> cls) {
         synchronized (metaMap) {
             methodMap = metaMap.get(cls);
-            if (methodMap != null) return;
+            if (methodMap != null) {
+                dispatchers = dispatcherMap.get(cls);
+                return;
+            }
             assert Modifier.isPublic(cls.getModifiers());
-            methodMap = new HashMap<Class, Method>();
+            methodMap = new HashMap<Class<?>, Method>();
             for (Method method : cls.getMethods()) {
                 boolean shouldAdd;
                 Class<?>[] parameters = method.getParameterTypes();
@@ -54,6 +124,8 @@ public class AutoSignalHandler implements SignalHandler {
                 }
             }
             metaMap.put(cls, methodMap);
+            dispatchers = new Dispatchers();
+            dispatcherMap.put(cls, dispatchers);
         }
     }
 
@@ -66,23 +138,105 @@ public class AutoSignalHandler implements SignalHandler {
             throw new RuntimeException("Exception in signal handler", e);
     }
 
-    @SuppressWarnings("unchecked")
     public void visitSignal(Signal signal) {
-        Class<?> cls = signal.getClass();
-        do {
-            Method method = methodMap.get(cls);
-            if (method != null)
+        Dispatcher[] ds = dispatchers.bySignal.get(signal.getClass());
+        if (ds == null)
+            ds = findDispatchers(signal.getClass());
+        for (Dispatcher d : ds) {
+            try {
+                d.dispatch(myObject, signal);
+            } catch (Throwable e) {
+                handleException(e);
+            }
+        }
+    }
+
+    private Dispatcher[] findDispatchers(Class<?> signalClass) {
+        List<Dispatcher> found = new ArrayList<Dispatcher>();
+        synchronized (metaMap) {
+            Class<?> cls = signalClass;
+            do {
+                Method method = methodMap.get(cls);
+                if (method != null)
+                    found.add(dispatcherFor(method));
+                cls = cls.getSuperclass();
+            }
+            while (Signal.class.isAssignableFrom(cls));
+        }
+        Dispatcher[] ds = found.toArray(new Dispatcher[found.size()]);
+        dispatchers.bySignal.put(signalClass, ds);
+        return ds;
+    }
+
+    // must be called with the lock on metaMap
+    private Dispatcher dispatcherFor(Method method) {
+        Dispatcher d = dispatchers.byMethod.get(method);
+        if (d == null) {
+            // the generated class is defined by another class loader, so it can only call public methods of public
+            // classes
+            if (Modifier.isPublic(method.getModifiers()) && Modifier.isPublic(method.getDeclaringClass().getModifiers())
+                    && Modifier.isPublic(method.getParameterTypes()[0].getModifiers())) {
                 try {
-                    method.invoke(myObject, signal);
-                } catch (Exception e) {
-                    if (e instanceof InvocationTargetException)
-                        handleException(e.getCause());
-                    else
-                        handleException(e);
+                    if (dispatchers.loader == null)
+                        dispatchers.loader = new DispatcherLoader(method.getDeclaringClass().getClassLoader());
+                    String name = "battlecode/engine/signal/GeneratedDispatcher" + generatedCount.incrementAndGet();
+                    d = (Dispatcher) dispatchers.loader.define(name.replace('/', '.'), generateDispatcher(name, method)).getDeclaredConstructor().newInstance();
+                } catch (Throwable e) {
+                    d = null;
                 }
-            cls = cls.getSuperclass();
+            }
+            if (d == null)
+                d = new ReflectiveDispatcher(method);
+            dispatchers.byMethod.put(method, d);
         }
-        while (Signal.class.isAssignableFrom(cls));
+        return d;
+    }
+
+    /**
+     * Generates a subclass of Dispatcher whose dispatch method calls the given method.
+     */
+    private static byte[] generateDispatcher(String name, Method method) {
+        String dispatcher = Type.getInternalName(Dispatcher.class);
+        String owner = Type.getInternalName(method.getDeclaringClass());
+        String param = Type.getInternalName(method.getParameterTypes()[0]);
+        boolean isStatic = Modifier.isStatic(method.getModifiers());
+
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER | Opcodes.ACC_SYNTHETIC, name, null, dispatcher, null);
+
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, dispatcher, "<init>", "()V");
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "dispatch", "(Ljava/lang/Object;L" + Type.getInternalName(Signal.class) + ";)V", null, null);
+        mv.visitCode();
+        if (!isStatic) {
+            mv.visitVarInsn(Opcodes.ALOAD, 1);
+            mv.visitTypeInsn(Opcodes.CHECKCAST, owner);
+        }
+        mv.visitVarInsn(Opcodes.ALOAD, 2);
+        mv.visitTypeInsn(Opcodes.CHECKCAST, param);
+        if (isStatic)
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, owner, method.getName(), Type.getMethodDescriptor(method));
+        else if (method.getDeclaringClass().isInterface())
+            mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, owner, method.getName(), Type.getMethodDescriptor(method));
+        else
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, owner, method.getName(), Type.getMethodDescriptor(method));
+        Type returnType = Type.getReturnType(method);
+        if (returnType.getSize() == 2)
+            mv.visitInsn(Opcodes.POP2);
+        else if (returnType.getSize() == 1)
+            mv.visitInsn(Opcodes.POP);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
     }
 
 }
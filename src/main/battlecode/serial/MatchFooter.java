@@ -10,6 +10,12 @@ public class MatchFooter implements Serializable {
     private final Team winner;
     private final long[][] state;
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private MatchFooter() {
+        winner = null;
+        state = null;
+    }
+
     public MatchFooter(Team winner, long[][] state) {
         this.winner = winner;
         this.state = state;
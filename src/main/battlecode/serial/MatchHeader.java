@@ -9,6 +9,14 @@ public class MatchHeader implements Serializable {
     private final long[][] state;
     private final int matchNumber, matchCount;
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private MatchHeader() {
+        map = null;
+        state = null;
+        matchNumber = 0;
+        matchCount = 0;
+    }
+
     public MatchHeader(GenericGameMap map, long[][] state, int matchNumber, int matchCount) {
         this.map = map;
         this.state = state;
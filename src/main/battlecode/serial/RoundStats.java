@@ -11,6 +11,12 @@ public class RoundStats implements Serializable {
     private final double[] gatheredPoints;
     private final double[] points;
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private RoundStats() {
+        gatheredPoints = null;
+        points = null;
+    }
+
     public RoundStats(double aPoints, double bPoints, double agp, double bgp) {
         points = new double[]{aPoints, bPoints};
         gatheredPoints = new double[]{agp, bgp};
@@ -8,6 +8,11 @@ public class RunNotification implements Notification {
     private static final long serialVersionUID = 2218449423201081302L;
     private final int rounds;
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private RunNotification() {
+        rounds = 0;
+    }
+
     public RunNotification(int rounds) {
         this.rounds = rounds;
     }
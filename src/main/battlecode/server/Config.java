@@ -39,6 +39,8 @@ public class Config {
         defaults.setProperty("bc.server.throttle", "yield");
         defaults.setProperty("bc.server.throttle-count", "15");
         defaults.setProperty("bc.server.output-xml", "true");
+        // match files only; overrides output-xml for them
+        defaults.setProperty("bc.server.output-binary", "false");
 
         defaults.setProperty("bc.engine.debug-methods", "true");
         defaults.setProperty("bc.engine.debug-max-bytecodes", "64000");
@@ -51,6 +53,17 @@ public class Config {
         defaults.setProperty("bc.engine.bytecodes-used", "true");
         defaults.setProperty("bc.engine.lazy-instrumenter", "false");
         defaults.setProperty("bc.engine.fast-hash", "false");
+        defaults.setProperty("bc.engine.superblocks", "true");
+        defaults.setProperty("bc.engine.verify-accounting", "false");
+        defaults.setProperty("bc.engine.class-cache", "");
+        defaults.setProperty("bc.engine.preinstrument", "false");
+        defaults.setProperty("bc.engine.share-library-classes", "false");
+        defaults.setProperty("bc.engine.shared-team-loader", "false");
+        defaults.setProperty("bc.engine.robot-state-arrays", "false");
+        defaults.setProperty("bc.engine.thread-backend", "platform");
+        defaults.setProperty("bc.engine.handoff-spin-ns", "20000");
+        defaults.setProperty("bc.engine.metrics", "false");
+        defaults.setProperty("bc.engine.metrics-file", "");
 
         defaults.setProperty("bc.client.opengl", "false");
         defaults.setProperty("bc.client.use-models", "true");
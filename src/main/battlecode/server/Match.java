@@ -3,11 +3,18 @@ package battlecode.server;
 import battlecode.common.GameConstants;
 import battlecode.common.Team;
 import battlecode.engine.Engine;
+import battlecode.engine.EngineContext;
+import battlecode.engine.EngineMetrics;
 import battlecode.engine.GameState;
 import battlecode.engine.GameWorldViewer;
+import battlecode.engine.instrumenter.DiskClassCache;
 import battlecode.engine.signal.Signal;
 import battlecode.serial.*;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.Observable;
 
 //import battlecode.tournament.TournamentType;
@@ -77,8 +84,8 @@ public class Match extends Observable {
 
     /**
      * Sets up the engine for this match. Because Engine's constructor
-     * manipulates static state, engine object creation should not be done at
-     * match creation time!
+     * loads the players and binds the calling thread to the new match,
+     * engine object creation should not be done at match creation time!
      */
     public void initialize() {
 
@@ -144,9 +151,17 @@ public class Match extends Observable {
         if (result == GameState.DONE)
             return null;
 
-        // Serialize the newly modified GameWorld.
-        return new RoundDelta(
-                gameWorldViewer.getAllSignals(this.bytecodesUsedEnabled));
+        EngineMetrics metrics = engine.getMetrics();
+        if (metrics == null)
+            // Serialize the newly modified GameWorld.
+            return new RoundDelta(
+                    gameWorldViewer.getAllSignals(this.bytecodesUsedEnabled));
+
+        long start = System.nanoTime();
+        Signal[] signals = gameWorldViewer.getAllSignals(this.bytecodesUsedEnabled);
+        metrics.recordBookkeeping(System.nanoTime() - start);
+        metrics.endRound(gameWorldViewer.getCurrentRound());
+        return new RoundDelta(signals);
     }
 
     /**
@@ -287,7 +302,7 @@ public class Match extends Observable {
      *         round is 1 (0 if no rounds have been run yet)
      */
     public int getRoundNumber() {
-        return Engine.getRoundNum() + 1;
+        return gameWorldViewer.getCurrentRound() + 1;
     }
 
     /**
@@ -295,8 +310,42 @@ public class Match extends Observable {
      */
     public void finish() {
         this.computedArchonMemory = this.engine.getArchonMemory();
+        if (this.engine.getMetrics() != null)
+            reportMetrics();
         this.gameWorldViewer = null;
         this.engine = null;
+        EngineContext.unbind();
+    }
+
+    // serializes writes to the metrics file from matches running at the same time
+    private static final Object metricsFileLock = new Object();
+
+    /**
+     * Prints a summary of the engine's metrics for this match, and appends the
+     * per-round metrics to the file given by bc.engine.metrics-file, if any.
+     */
+    private void reportMetrics() {
+        String label = info.getTeamA() + " vs. " + info.getTeamB() + " on " + map;
+        System.out.println("[server] metrics for " + label + ":\n" + engine.getMetricsSummary());
+        if (DiskClassCache.isEnabled())
+            System.out.println("[server] " + DiskClassCache.getSummary());
+
+        String fileName = options.get("bc.engine.metrics-file");
+        if (fileName == null || fileName.length() == 0)
+            return;
+        synchronized (metricsFileLock) {
+            File file = new File(fileName);
+            boolean newFile = !file.exists() || file.length() == 0;
+            try {
+                PrintWriter out = new PrintWriter(new FileWriter(file, true));
+                if (newFile)
+                    out.println(EngineMetrics.ROUNDS_HEADER);
+                engine.getMetrics().writeRounds(out, label);
+                out.close();
+            } catch (IOException e) {
+                Server.warn("unable to write metrics to " + fileName);
+            }
+        }
     }
 
     @Override
@@ -0,0 +1,127 @@
+package battlecode.server.proxy;
+
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The constants and reflection helpers shared by BinaryOutputStream and BinaryInputStream.
+ * <p/>
+ * A stream starts with MAGIC and VERSION, followed by values.  Each value starts with a tag byte:
+ * <ul>
+ * <li>NULL</li>
+ * <li>OBJECT, followed by the class's code and the values of its fields.  Classes get codes in the order they first
+ * appear in the stream, and the first time a class appears its code is followed by its name and the name and kind
+ * of each of its fields.  Primitive fields are written raw, and other fields as values.</li>
+ * <li>ARRAY, followed by the name of the component type, the length and the values</li>
+ * <li>INT_ARRAY, LONG_ARRAY, DOUBLE_ARRAY, BOOLEAN_ARRAY and BYTE_ARRAY, followed by the length and the raw
+ * elements</li>
+ * <li>STRING, followed by a string</li>
+ * <li>ENUM, followed by the name of the enum class and the name of the constant, as strings</li>
+ * <li>MAP_LOCATION, followed by x and y</li>
+ * <li>INTEGER, LONG, DOUBLE and BOOLEAN, followed by the raw value</li>
+ * <li>MAP, followed by the number of entries and a key and value for each</li>
+ * </ul>
+ * Lengths and codes are unsigned varints.  Strings go through a string table: a string is written as 0 followed by
+ * the string itself, or as i for the i-th string in the table, or as one more than the size of the table followed by
+ * a string that is added to the table.  The string itself is its length in UTF-8 bytes followed by the bytes.
+ * <p/>
+ * Other multi-byte numbers are big-endian, as DataOutputStream writes them.
+ */
+final class BinaryFormat {
+
+    static final int MAGIC = 0x42434d46; // "BCMF"
+    static final int VERSION = 1;
+
+    static final byte NULL = 0;
+    static final byte OBJECT = 1;
+    static final byte ARRAY = 2;
+    static final byte STRING = 3;
+    static final byte ENUM = 4;
+    static final byte MAP_LOCATION = 5;
+    static final byte INT_ARRAY = 6;
+    static final byte LONG_ARRAY = 7;
+    static final byte DOUBLE_ARRAY = 8;
+    static final byte BOOLEAN_ARRAY = 9;
+    static final byte BYTE_ARRAY = 10;
+    static final byte INTEGER = 11;
+    static final byte LONG = 12;
+    static final byte DOUBLE = 13;
+    static final byte BOOLEAN = 14;
+    static final byte MAP = 15;
+
+    /**
+     * Once the string table has this many strings, new strings are written out in full every time.  Indicator
+     * strings change from round to round, so the table would otherwise grow for the whole match.
+     */
+    static final int MAX_STRINGS = 1 << 16;
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private BinaryFormat() {
+    }
+
+    /**
+     * Returns the fields of cls that are written to the stream: the instance fields that aren't transient, of cls
+     * and its superclasses, superclasses first.
+     */
+    static Field[] fieldsOf(Class<?> cls) {
+        List<Class<?>> hierarchy = new ArrayList<Class<?>>();
+        for (Class<?> c = cls; c != null && c != Object.class; c = c.getSuperclass())
+            hierarchy.add(0, c);
+        List<Field> fields = new ArrayList<Field>();
+        for (Class<?> c : hierarchy) {
+            for (Field f : c.getDeclaredFields()) {
+                if ((f.getModifiers() & (Modifier.STATIC | Modifier.TRANSIENT)) != 0)
+                    continue;
+                f.setAccessible(true);
+                fields.add(f);
+            }
+        }
+        return fields.toArray(new Field[fields.size()]);
+    }
+
+    /**
+     * Returns the kind of a field of the given type: the JVM descriptor character for primitive types, and 'L' for
+     * everything else.
+     */
+    static char kindOf(Class<?> type) {
+        if (type == boolean.class) return 'Z';
+        if (type == byte.class) return 'B';
+        if (type == char.class) return 'C';
+        if (type == short.class) return 'S';
+        if (type == int.class) return 'I';
+        if (type == long.class) return 'J';
+        if (type == float.class) return 'F';
+        if (type == double.class) return 'D';
+        return 'L';
+    }
+
+    /**
+     * Returns true if objects of cls can be written field by field.  Classes from the JDK have fields that aren't
+     * ours to set, so the ones that show up in match data get tags of their own.  Other classes need a no-arg
+     * constructor, which may be private, for BinaryInputStream to make their objects with.
+     */
+    static boolean isWritable(Class<?> cls) {
+        return Serializable.class.isAssignableFrom(cls) && !cls.getName().startsWith("java.")
+                && constructorOf(cls) != null;
+    }
+
+    /**
+     * Returns cls's no-arg constructor, made accessible, or null if it doesn't have one.
+     */
+    static Constructor<?> constructorOf(Class<?> cls) {
+        try {
+            Constructor<?> c = cls.getDeclaredConstructor();
+            c.setAccessible(true);
+            return c;
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,365 @@
+package battlecode.server.proxy;
+
+import battlecode.common.MapLocation;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.StreamCorruptedException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static battlecode.server.proxy.BinaryFormat.*;
+
+/**
+ * Reads match data written by BinaryOutputStream.  readObject() throws an EOFException at the end of the stream.
+ * <p/>
+ * Objects are made with their classes' no-arg constructors, which may be private, and then their fields are set.
+ * Fields are matched up by name, so a field that has been added to a class since the stream was written keeps the
+ * value the constructor gave it, and one that has been removed is skipped.  A class's readResolve method is called if
+ * it has one, so singletons such as the notifications stay singletons.
+ * <p/>
+ * Unlike Java serialization, private readObject methods aren't called.  The only one in match data is RoundDelta's,
+ * which folds indicator string signals, and RoundDelta's constructor has already done that before a round is
+ * written.
+ */
+public class BinaryInputStream extends ObjectInputStream {
+
+    private static class ClassInfo {
+        final Constructor<?> constructor;
+        // null for the fields the class doesn't have any more
+        final Field[] fields;
+        final char[] kinds;
+        final Method readResolve;
+
+        ClassInfo(Class<?> cls, Field[] fields, char[] kinds) throws IOException {
+            if (!isWritable(cls))
+                throw new InvalidClassException(cls.getName(), "can't be read from a binary match file");
+            this.fields = fields;
+            this.kinds = kinds;
+            constructor = constructorOf(cls);
+            if (constructor == null)
+                throw new InvalidClassException(cls.getName(), "has no no-arg constructor");
+            Method m = null;
+            try {
+                m = cls.getDeclaredMethod("readResolve");
+                m.setAccessible(true);
+            } catch (NoSuchMethodException e) {
+            }
+            readResolve = m;
+        }
+    }
+
+    private final DataInputStream in;
+    private final List<ClassInfo> classes = new ArrayList<ClassInfo>();
+    private final List<String> strings = new ArrayList<String>();
+    private final Map<String, Class<?>> classesByName = new HashMap<String, Class<?>>();
+
+    public BinaryInputStream(InputStream stream) throws IOException {
+        super();
+        in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readInt() != MAGIC)
+            throw new StreamCorruptedException("not a binary match file");
+        int version = in.readInt();
+        if (version > VERSION)
+            throw new StreamCorruptedException("binary match file version " + version + " is newer than this reader");
+    }
+
+    protected Object readObjectOverride() throws IOException, ClassNotFoundException {
+        return readValue();
+    }
+
+    private Object readValue() throws IOException, ClassNotFoundException {
+        byte tag = in.readByte();
+        int n;
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString();
+            case MAP_LOCATION: {
+                int x = in.readInt();
+                int y = in.readInt();
+                return new MapLocation(x, y);
+            }
+            case ENUM: {
+                Class<?> cls = classFor(readString());
+                return enumValue(cls, readString());
+            }
+            case INT_ARRAY: {
+                int[] a = new int[readLength()];
+                for (int i = 0; i < a.length; i++)
+                    a[i] = in.readInt();
+                return a;
+            }
+            case LONG_ARRAY: {
+                long[] a = new long[readLength()];
+                for (int i = 0; i < a.length; i++)
+                    a[i] = in.readLong();
+                return a;
+            }
+            case DOUBLE_ARRAY: {
+                double[] a = new double[readLength()];
+                for (int i = 0; i < a.length; i++)
+                    a[i] = in.readDouble();
+                return a;
+            }
+            case BOOLEAN_ARRAY: {
+                boolean[] a = new boolean[readLength()];
+                for (int i = 0; i < a.length; i++)
+                    a[i] = in.readBoolean();
+                return a;
+            }
+            case BYTE_ARRAY: {
+                byte[] a = new byte[readLength()];
+                in.readFully(a);
+                return a;
+            }
+            case ARRAY: {
+                Class<?> component = classFor(readString());
+                n = readLength();
+                Object[] a = (Object[]) Array.newInstance(component, n);
+                for (int i = 0; i < n; i++)
+                    a[i] = readValue();
+                return a;
+            }
+            case INTEGER:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case DOUBLE:
+                return in.readDouble();
+            case BOOLEAN:
+                return in.readBoolean();
+            case MAP: {
+                n = readLength();
+                Map<Object, Object> m = new LinkedHashMap<Object, Object>();
+                for (int i = 0; i < n; i++) {
+                    Object key = readValue();
+                    m.put(key, readValue());
+                }
+                return m;
+            }
+            case OBJECT:
+                return readObjectFields();
+            default:
+                throw new StreamCorruptedException("unknown tag " + tag);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object enumValue(Class<?> cls, String name) throws InvalidClassException {
+        if (!cls.isEnum())
+            throw new InvalidClassException(cls.getName(), "not an enum");
+        return Enum.valueOf((Class) cls, name);
+    }
+
+    private Object readObjectFields() throws IOException, ClassNotFoundException {
+        int code = readLength();
+        if (code == classes.size())
+            classes.add(readClassInfo());
+        else if (code > classes.size())
+            throw new StreamCorruptedException("class " + code + " used before it was described");
+        ClassInfo info = classes.get(code);
+        try {
+            Object o = info.constructor.newInstance();
+            for (int i = 0; i < info.kinds.length; i++) {
+                Field f = info.fields[i];
+                switch (info.kinds[i]) {
+                    case 'Z': {
+                        boolean v = in.readBoolean();
+                        if (f != null) f.setBoolean(o, v);
+                        break;
+                    }
+                    case 'B': {
+                        byte v = in.readByte();
+                        if (f != null) f.setByte(o, v);
+                        break;
+                    }
+                    case 'C': {
+                        char v = in.readChar();
+                        if (f != null) f.setChar(o, v);
+                        break;
+                    }
+                    case 'S': {
+                        short v = in.readShort();
+                        if (f != null) f.setShort(o, v);
+                        break;
+                    }
+                    case 'I': {
+                        int v = in.readInt();
+                        if (f != null) f.setInt(o, v);
+                        break;
+                    }
+                    case 'J': {
+                        long v = in.readLong();
+                        if (f != null) f.setLong(o, v);
+                        break;
+                    }
+                    case 'F': {
+                        float v = in.readFloat();
+                        if (f != null) f.setFloat(o, v);
+                        break;
+                    }
+                    case 'D': {
+                        double v = in.readDouble();
+                        if (f != null) f.setDouble(o, v);
+                        break;
+                    }
+                    default: {
+                        Object v = readValue();
+                        if (f != null) f.set(o, v);
+                    }
+                }
+            }
+            if (info.readResolve != null)
+                o = info.readResolve.invoke(o);
+            return o;
+        } catch (InstantiationException e) {
+            throw (IOException) new InvalidClassException(e.getMessage()).initCause(e);
+        } catch (IllegalAccessException e) {
+            throw (IOException) new InvalidClassException(e.getMessage()).initCause(e);
+        } catch (IllegalArgumentException e) {
+            // a field's type has changed since the stream was written
+            throw (IOException) new InvalidClassException(e.getMessage()).initCause(e);
+        } catch (InvocationTargetException e) {
+            throw (IOException) new InvalidClassException(e.getMessage()).initCause(e.getCause());
+        }
+    }
+
+    private ClassInfo readClassInfo() throws IOException, ClassNotFoundException {
+        Class<?> cls = classFor(readString());
+        Map<String, Field> local = new HashMap<String, Field>();
+        for (Field f : fieldsOf(cls))
+            local.put(f.getName(), f);
+        int n = readLength();
+        Field[] fields = new Field[n];
+        char[] kinds = new char[n];
+        for (int i = 0; i < n; i++) {
+            String name = readString();
+            kinds[i] = (char) in.readByte();
+            Field f = local.get(name);
+            if (f != null && kindOf(f.getType()) == kinds[i])
+                fields[i] = f;
+        }
+        return new ClassInfo(cls, fields, kinds);
+    }
+
+    private Class<?> classFor(String name) throws ClassNotFoundException {
+        Class<?> cls = classesByName.get(name);
+        if (cls == null) {
+            cls = Class.forName(name, false, BinaryInputStream.class.getClassLoader());
+            classesByName.put(name, cls);
+        }
+        return cls;
+    }
+
+    private String readString() throws IOException {
+        int index = readLength();
+        if (index > 0 && index <= strings.size())
+            return strings.get(index - 1);
+        if (index > strings.size() + 1)
+            throw new StreamCorruptedException("string " + index + " used before it was defined");
+        byte[] bytes = new byte[readLength()];
+        in.readFully(bytes);
+        String s = new String(bytes, UTF8);
+        if (index > 0)
+            strings.add(s);
+        return s;
+    }
+
+    private int readLength() throws IOException {
+        int n = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            n |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+                return n;
+        }
+        throw new StreamCorruptedException("malformed length");
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+
+    public int available() throws IOException {
+        return in.available();
+    }
+
+    public int read() throws IOException {
+        return in.read();
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+        return in.read(b, off, len);
+    }
+
+    public void readFully(byte[] b) throws IOException {
+        in.readFully(b);
+    }
+
+    public void readFully(byte[] b, int off, int len) throws IOException {
+        in.readFully(b, off, len);
+    }
+
+    public int skipBytes(int len) throws IOException {
+        return in.skipBytes(len);
+    }
+
+    public boolean readBoolean() throws IOException {
+        return in.readBoolean();
+    }
+
+    public byte readByte() throws IOException {
+        return in.readByte();
+    }
+
+    public int readUnsignedByte() throws IOException {
+        return in.readUnsignedByte();
+    }
+
+    public short readShort() throws IOException {
+        return in.readShort();
+    }
+
+    public int readUnsignedShort() throws IOException {
+        return in.readUnsignedShort();
+    }
+
+    public char readChar() throws IOException {
+        return in.readChar();
+    }
+
+    public int readInt() throws IOException {
+        return in.readInt();
+    }
+
+    public long readLong() throws IOException {
+        return in.readLong();
+    }
+
+    public float readFloat() throws IOException {
+        return in.readFloat();
+    }
+
+    public double readDouble() throws IOException {
+        return in.readDouble();
+    }
+
+    public String readUTF() throws IOException {
+        return in.readUTF();
+    }
+
+}
@@ -0,0 +1,283 @@
+package battlecode.server.proxy;
+
+import battlecode.common.MapLocation;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+
+import static battlecode.server.proxy.BinaryFormat.*;
+
+/**
+ * Writes match data in the binary match format described in BinaryFormat, which BinaryInputStream reads back.
+ * <p/>
+ * Unlike Java serialization, a class is described once per stream, the first time one of its objects is written,
+ * rather than after every reset(), and strings that come up again are written as an index into a string table.
+ * Objects aren't shared: an object that is written twice is read back as two objects, which is fine for match data,
+ * where every round is written once.
+ */
+public class BinaryOutputStream extends ObjectOutputStream {
+
+    private static class ClassInfo {
+        final int code;
+        final Field[] fields;
+        final char[] kinds;
+
+        ClassInfo(int code, Class<?> cls) {
+            this.code = code;
+            fields = fieldsOf(cls);
+            kinds = new char[fields.length];
+            for (int i = 0; i < fields.length; i++)
+                kinds[i] = kindOf(fields[i].getType());
+        }
+    }
+
+    private final DataOutputStream out;
+    private final Map<Class<?>, ClassInfo> classes = new HashMap<Class<?>, ClassInfo>();
+    private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+    public BinaryOutputStream(OutputStream stream) throws IOException {
+        super();
+        out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    protected void writeObjectOverride(Object o) throws IOException {
+        writeValue(o);
+    }
+
+    /**
+     * Does nothing.  The only state kept between objects is the class and string tables, which never go out of
+     * date, so Proxy can call this before every object without the classes being described again.
+     */
+    public void reset() throws IOException {
+    }
+
+    private void writeValue(Object o) throws IOException {
+        if (o == null)
+            out.writeByte(NULL);
+        else if (o instanceof String) {
+            out.writeByte(STRING);
+            writeString((String) o);
+        } else if (o instanceof MapLocation) {
+            MapLocation loc = (MapLocation) o;
+            out.writeByte(MAP_LOCATION);
+            out.writeInt(loc.x);
+            out.writeInt(loc.y);
+        } else if (o instanceof Enum) {
+            Enum<?> e = (Enum<?>) o;
+            out.writeByte(ENUM);
+            writeString(e.getDeclaringClass().getName());
+            writeString(e.name());
+        } else if (o instanceof int[]) {
+            int[] a = (int[]) o;
+            out.writeByte(INT_ARRAY);
+            writeLength(a.length);
+            for (int x : a)
+                out.writeInt(x);
+        } else if (o instanceof long[]) {
+            long[] a = (long[]) o;
+            out.writeByte(LONG_ARRAY);
+            writeLength(a.length);
+            for (long x : a)
+                out.writeLong(x);
+        } else if (o instanceof double[]) {
+            double[] a = (double[]) o;
+            out.writeByte(DOUBLE_ARRAY);
+            writeLength(a.length);
+            for (double x : a)
+                out.writeDouble(x);
+        } else if (o instanceof boolean[]) {
+            boolean[] a = (boolean[]) o;
+            out.writeByte(BOOLEAN_ARRAY);
+            writeLength(a.length);
+            for (boolean x : a)
+                out.writeBoolean(x);
+        } else if (o instanceof byte[]) {
+            byte[] a = (byte[]) o;
+            out.writeByte(BYTE_ARRAY);
+            writeLength(a.length);
+            out.write(a);
+        } else if (o instanceof Object[]) {
+            Object[] a = (Object[]) o;
+            out.writeByte(ARRAY);
+            writeString(a.getClass().getComponentType().getName());
+            writeLength(a.length);
+            for (Object x : a)
+                writeValue(x);
+        } else if (o instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) o);
+        } else if (o instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) o);
+        } else if (o instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) o);
+        } else if (o instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) o);
+        } else if (o instanceof Map) {
+            Map<?, ?> m = (Map<?, ?>) o;
+            out.writeByte(MAP);
+            writeLength(m.size());
+            for (Map.Entry<?, ?> e : m.entrySet()) {
+                writeValue(e.getKey());
+                writeValue(e.getValue());
+            }
+        } else
+            writeObjectFields(o);
+    }
+
+    private void writeObjectFields(Object o) throws IOException {
+        Class<?> cls = o.getClass();
+        ClassInfo info = classes.get(cls);
+        out.writeByte(OBJECT);
+        if (info == null) {
+            if (!isWritable(cls))
+                throw new NotSerializableException(cls.getName());
+            info = new ClassInfo(classes.size(), cls);
+            classes.put(cls, info);
+            writeLength(info.code);
+            writeString(cls.getName());
+            writeLength(info.fields.length);
+            for (int i = 0; i < info.fields.length; i++) {
+                writeString(info.fields[i].getName());
+                out.writeByte(info.kinds[i]);
+            }
+        } else
+            writeLength(info.code);
+        try {
+            for (int i = 0; i < info.fields.length; i++) {
+                Field f = info.fields[i];
+                switch (info.kinds[i]) {
+                    case 'Z':
+                        out.writeBoolean(f.getBoolean(o));
+                        break;
+                    case 'B':
+                        out.writeByte(f.getByte(o));
+                        break;
+                    case 'C':
+                        out.writeChar(f.getChar(o));
+                        break;
+                    case 'S':
+                        out.writeShort(f.getShort(o));
+                        break;
+                    case 'I':
+                        out.writeInt(f.getInt(o));
+                        break;
+                    case 'J':
+                        out.writeLong(f.getLong(o));
+                        break;
+                    case 'F':
+                        out.writeFloat(f.getFloat(o));
+                        break;
+                    case 'D':
+                        out.writeDouble(f.getDouble(o));
+                        break;
+                    default:
+                        writeValue(f.get(o));
+                }
+            }
+        } catch (IllegalAccessException e) {
+            // fieldsOf made them accessible
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void writeString(String s) throws IOException {
+        Integer index = strings.get(s);
+        if (index != null) {
+            writeLength(index + 1);
+            return;
+        }
+        if (strings.size() < MAX_STRINGS) {
+            strings.put(s, strings.size());
+            writeLength(strings.size());
+        } else
+            writeLength(0);
+        byte[] bytes = s.getBytes(UTF8);
+        writeLength(bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeLength(int n) throws IOException {
+        while ((n & ~0x7f) != 0) {
+            out.writeByte((n & 0x7f) | 0x80);
+            n >>>= 7;
+        }
+        out.writeByte(n);
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    public void close() throws IOException {
+        out.close();
+    }
+
+    public void write(int b) throws IOException {
+        out.write(b);
+    }
+
+    public void write(byte[] b) throws IOException {
+        out.write(b);
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+    }
+
+    public void writeBoolean(boolean v) throws IOException {
+        out.writeBoolean(v);
+    }
+
+    public void writeByte(int v) throws IOException {
+        out.writeByte(v);
+    }
+
+    public void writeShort(int v) throws IOException {
+        out.writeShort(v);
+    }
+
+    public void writeChar(int v) throws IOException {
+        out.writeChar(v);
+    }
+
+    public void writeInt(int v) throws IOException {
+        out.writeInt(v);
+    }
+
+    public void writeLong(long v) throws IOException {
+        out.writeLong(v);
+    }
+
+    public void writeFloat(float v) throws IOException {
+        out.writeFloat(v);
+    }
+
+    public void writeDouble(double v) throws IOException {
+        out.writeDouble(v);
+    }
+
+    public void writeBytes(String s) throws IOException {
+        out.writeBytes(s);
+    }
+
+    public void writeChars(String s) throws IOException {
+        out.writeChars(s);
+    }
+
+    public void writeUTF(String s) throws IOException {
+        out.writeUTF(s);
+    }
+
+}
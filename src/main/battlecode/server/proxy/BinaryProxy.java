@@ -0,0 +1,124 @@
+package battlecode.server.proxy;
+
+import battlecode.serial.MatchFooter;
+import battlecode.serial.RoundStats;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import java.io.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A Proxy that writes match data in the binary match format; see BinaryFormat.
+ * <p/>
+ * main() converts match files between the binary format and the existing ones.
+ */
+public class BinaryProxy extends Proxy {
+
+    OutputStream stream;
+
+    public BinaryProxy(OutputStream stream) {
+        this.stream = stream;
+    }
+
+    protected OutputStream getOutputStream() throws IOException {
+        return new BinaryOutputStream(stream);
+    }
+
+    // In "compute and view match synchronously" mode, we can get
+    // stuck if we don't flush every round
+    public void writeStats(RoundStats stats) throws IOException {
+        writeObject(stats);
+        output.flush();
+    }
+
+    public void writeFooter(MatchFooter footer) throws IOException {
+        writeObject(footer);
+        output.flush();
+    }
+
+    /**
+     * Opens a match file in any of the formats, gzipped or not.
+     */
+    public static ObjectInputStream openMatchFile(InputStream stream) throws IOException {
+        stream = new BufferedInputStream(stream);
+        stream.mark(2);
+        int b0 = stream.read(), b1 = stream.read();
+        stream.reset();
+        if (b0 == 0x1f && b1 == 0x8b)
+            return openMatchFile(new GZIPInputStream(stream));
+        stream.mark(4);
+        int magic = new DataInputStream(stream).readInt();
+        stream.reset();
+        if (magic == BinaryFormat.MAGIC)
+            return new BinaryInputStream(stream);
+        if ((magic >>> 16) == 0xaced)
+            return new ObjectInputStream(stream);
+        return XStreamProxy.getXStream().createObjectInputStream(stream);
+    }
+
+    static private final int EX_USAGE = 64;
+    static private final int EX_DATAERR = 65;
+    static private final int EX_IOERR = 74;
+
+    public static void usage() {
+        System.err.println("Usage: BinaryProxy [-f binary|xml|java] input output");
+        System.exit(EX_USAGE);
+    }
+
+    public static void main(String[] args) {
+        Options options = new Options();
+        options.addOption("f", "format", true, "the format to write: binary (the default), xml or java");
+        CommandLine cl = null;
+        try {
+            cl = new GnuParser().parse(options, args);
+        } catch (ParseException e) {
+            usage();
+            return;
+        }
+        if (cl.getArgs().length != 2) {
+            usage();
+            return;
+        }
+        String format = cl.getOptionValue('f', "binary");
+        Proxy proxy = null;
+        try {
+            ObjectInputStream input = openMatchFile(new FileInputStream(cl.getArgs()[0]));
+            String output = cl.getArgs()[1];
+            if (format.equals("binary"))
+                proxy = ProxyFactory.createBinaryProxyFromFile(output);
+            else if (format.equals("xml"))
+                proxy = ProxyFactory.createXStreamProxyFromFile(output);
+            else if (format.equals("java"))
+                proxy = new FileProxy(output);
+            else {
+                usage();
+                return;
+            }
+            proxy.open();
+            while (true) {
+                proxy.writeObject(input.readObject());
+            }
+        } catch (EOFException e) {
+            try {
+                if (proxy != null)
+                    proxy.close();
+            } catch (IOException e2) {
+                e2.printStackTrace();
+                System.exit(EX_IOERR);
+            }
+        } catch (ClassNotFoundException e) {
+            e.printStackTrace();
+            System.exit(EX_DATAERR);
+        } catch (IOException e) {
+            e.printStackTrace();
+            if (e instanceof StreamCorruptedException || e instanceof InvalidClassException)
+                System.exit(EX_DATAERR);
+            else
+                System.exit(EX_IOERR);
+        }
+    }
+
+}
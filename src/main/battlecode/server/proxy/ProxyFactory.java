@@ -32,7 +32,9 @@ public class ProxyFactory {
      * @throws IOException if the Proxy could not be created
      */
     public static Proxy createProxyFromFile(String fileName) throws IOException {
-        if (Boolean.parseBoolean(Config.getGlobalConfig().get("bc.server.output-xml")))
+        if (Boolean.parseBoolean(Config.getGlobalConfig().get("bc.server.output-binary")))
+            return createBinaryProxyFromFile(fileName);
+        else if (Boolean.parseBoolean(Config.getGlobalConfig().get("bc.server.output-xml")))
             return createXStreamProxyFromFile(fileName);
         else
             return new FileProxy(fileName);
@@ -60,4 +62,23 @@ public class ProxyFactory {
 
         };
     }
+
+    /**
+     * This method creates a Proxy for writing match data in the binary match
+     * format.
+     *
+     * @param fileName the name of the file to use for saving match data
+     * @return a new Proxy for writing match data to binary file
+     * @throws IOException if the Proxy could not be created
+     */
+    public static Proxy createBinaryProxyFromFile(String fileName)
+            throws IOException {
+        return new FileProxy(fileName) {
+
+            public OutputStream getOutputStream() throws IOException {
+                return new BinaryOutputStream(stream);
+            }
+
+        };
+    }
 }
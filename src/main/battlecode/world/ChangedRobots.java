@@ -0,0 +1,54 @@
+package battlecode.world;
+
+import java.util.Arrays;
+
+/**
+ * The robots that have one of the RobotStateStore change flags set, so that the world can build its change signals
+ * at the end of a round from the robots that changed, instead of asking every robot.  A robot adds itself when it
+ * sets the flag, and the buffer is reused from round to round.
+ */
+class ChangedRobots {
+
+    private final byte flag;
+    private InternalRobot[] robots = new InternalRobot[64];
+    private int size;
+
+    ChangedRobots(byte flag) {
+        this.flag = flag;
+    }
+
+    void add(InternalRobot r) {
+        if (size == robots.length)
+            robots = Arrays.copyOf(robots, 2 * size);
+        robots[size++] = r;
+    }
+
+    /**
+     * Clears the flag of every robot that is still in the game and still has it set, and moves those robots to the
+     * front of robots(), in the order the world keeps its objects in.  Returns how many there are.  clear() should
+     * be called once they have been used.
+     */
+    int collect() {
+        Arrays.sort(robots, 0, size, GameWorld.ADDED_ORDER);
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            InternalRobot r = robots[i];
+            // a robot can be here twice if its flag was cleared by someone else and set again
+            if (r.addedOrder >= 0 && r.clearChanged(flag))
+                robots[n++] = r;
+        }
+        Arrays.fill(robots, n, size, null);
+        size = n;
+        return n;
+    }
+
+    InternalRobot[] robots() {
+        return robots;
+    }
+
+    void clear() {
+        Arrays.fill(robots, 0, size, null);
+        size = 0;
+    }
+
+}
@@ -0,0 +1,94 @@
+package battlecode.world;
+
+import battlecode.common.MapLocation;
+import battlecode.common.Team;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The encampment squares on the map, and which team owns each of them.  Each team's encampments are kept in a set
+ * that is updated whenever an encampment changes hands, so counting them doesn't go through every encampment, and
+ * the arrays of locations that players ask for are built once and kept until the encampments they list change.
+ */
+class EncampmentIndex {
+
+    private final List<MapLocation> all = new ArrayList<MapLocation>();
+    private final Map<MapLocation, Team> owners = new HashMap<MapLocation, Team>();
+    // each team's encampments, in the order the team got them
+    private final Map<Team, Set<MapLocation>> byTeam = new EnumMap<Team, Set<MapLocation>>(Team.class);
+
+    // null if they have changed
+    private MapLocation[] allArray;
+    private final Map<Team, MapLocation[]> byTeamArrays = new EnumMap<Team, MapLocation[]>(Team.class);
+
+    EncampmentIndex() {
+        for (Team t : Team.values())
+            byTeam.put(t, new LinkedHashSet<MapLocation>());
+    }
+
+    /**
+     * Adds a new encampment square.
+     */
+    void add(MapLocation loc, Team team) {
+        all.add(loc);
+        allArray = null;
+        setOwner(loc, team);
+    }
+
+    /**
+     * Gives the encampment at loc to team.
+     */
+    void setOwner(MapLocation loc, Team team) {
+        Team old = owners.put(loc, team);
+        if (old == team)
+            return;
+        if (old != null) {
+            byTeam.get(old).remove(loc);
+            byTeamArrays.remove(old);
+        }
+        byTeam.get(team).add(loc);
+        byTeamArrays.remove(team);
+    }
+
+    boolean contains(MapLocation loc) {
+        return owners.containsKey(loc);
+    }
+
+    Team getOwner(MapLocation loc) {
+        return owners.get(loc);
+    }
+
+    int count(Team team) {
+        return byTeam.get(team).size();
+    }
+
+    /**
+     * Returns every encampment square, in the order they were added.  The array is shared, so callers must not
+     * modify it.
+     */
+    MapLocation[] getAll() {
+        if (allArray == null)
+            allArray = all.toArray(new MapLocation[all.size()]);
+        return allArray;
+    }
+
+    /**
+     * Returns the team's encampments.  The array is shared, so callers must not modify it.
+     */
+    MapLocation[] getByTeam(Team team) {
+        MapLocation[] locs = byTeamArrays.get(team);
+        if (locs == null) {
+            Set<MapLocation> camps = byTeam.get(team);
+            locs = camps.toArray(new MapLocation[camps.size()]);
+            byTeamArrays.put(team, locs);
+        }
+        return locs;
+    }
+
+}
@@ -66,6 +66,17 @@ public class GameMap implements GenericGameMap {
         WIDTH, HEIGHT, SEED, MAX_ROUNDS, THEME /*, MIN_POINTS*/
     }
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private GameMap() {
+        mapWidth = 0;
+        mapHeight = 0;
+        mapTiles = null;
+        mapOriginX = 0;
+        mapOriginY = 0;
+        seed = 0;
+        maxRounds = 0;
+    }
+
     public GameMap(GameMap gm) {
         this.mapWidth = gm.mapWidth;
         this.mapHeight = gm.mapHeight;
@@ -1,14 +1,14 @@
 package battlecode.world;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.EnumMap;
 import java.util.EnumSet;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 
 import battlecode.common.Direction;
@@ -31,6 +31,7 @@ import battlecode.engine.signal.SignalHandler;
 import battlecode.serial.DominationFactor;
 import battlecode.serial.GameStats;
 import battlecode.serial.RoundStats;
+import battlecode.server.Config;
 import battlecode.world.signal.AttackSignal;
 import battlecode.world.signal.BroadcastSignal;
 import battlecode.world.signal.BytecodesUsedSignal;
@@ -74,36 +75,46 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
     private final GameStats gameStats = new GameStats();        // end-of-game stats
     private double[] teamRoundResources = new double[2];
     private double[] lastRoundResources = new double[2];
-    private final Map<MapLocation3D, InternalObject> gameObjectsByLoc = new HashMap<MapLocation3D, InternalObject>();
+    private final ObjectGrid gameObjectsByLoc;
+    private final VisionCoverage visionCoverage;
+    // the number of objects that have been added to gameObjectsByID
+    private int objectsAdded;
     private double[] teamResources = new double[2];
     private double[] teamSpawnRate = new double[2];
     private int[] teamCapturingNumber = new int[2];
 
-    private List<MapLocation> encampments = new ArrayList<MapLocation>();
-    private Map<MapLocation, Team> encampmentMap = new HashMap<MapLocation, Team>();
+    private final EncampmentIndex encampments = new EncampmentIndex();
     private Map<Team, InternalRobot> baseHQs = new EnumMap<Team, InternalRobot>(Team.class);
-    private Map<MapLocation, Team> mineLocations = new HashMap<MapLocation, Team>();
+    private final MineGrid mines;
+    // the state of all robots, if bc.engine.robot-state-arrays is set
+    private final RobotStateStore robotState;
+    // robots whose energon or shields have changed since the last signals were built
+    private final ChangedRobots energonChangedRobots = new ChangedRobots(RobotStateStore.ENERGON_CHANGED);
+    private final ChangedRobots shieldChangedRobots = new ChangedRobots(RobotStateStore.SHIELD_CHANGED);
+    private InternalRobot[] allRobots = new InternalRobot[0];
     private Map<Team, GameMap.MapMemory> mapMemory = new EnumMap<Team, GameMap.MapMemory>(Team.class);
-    private Map<Team, Set<MapLocation>> knownMineLocations = new EnumMap<Team, Set<MapLocation>>(Team.class);
     private Map<Team, Map<Upgrade, Integer>> research = new EnumMap<Team, Map<Upgrade, Integer>>(Team.class);
     
     private Map<Team, Set<Upgrade>> upgrades = new EnumMap<Team, Set<Upgrade>>(Team.class);
-    private Map<Integer, Integer> radio = new HashMap<Integer, Integer>();
+    // channels outside 0..BROADCAST_MAX_CHANNELS can be broadcast on, but not read, so they aren't kept
+    private final int[] radio = new int[GameConstants.BROADCAST_MAX_CHANNELS + 1];
 
     // robots to remove from the game at end of turn
     private List<InternalRobot> deadRobots = new ArrayList<InternalRobot>();
 
     @SuppressWarnings("unchecked")
     public GameWorld(GameMap gm, String teamA, String teamB, long[][] oldArchonMemory) {
-        super(gm.getSeed(), teamA, teamB, oldArchonMemory);
+        super(gm.getSeed(), teamA, teamB, oldArchonMemory, InternalObject.class);
         gameMap = gm;
+        gameObjectsByLoc = new ObjectGrid(gm);
+        visionCoverage = new VisionCoverage(this, gm);
+        mines = new MineGrid(gm);
+        robotState = Config.getGlobalConfig().getBoolean("bc.engine.robot-state-arrays") ? new RobotStateStore() : null;
         mapMemory.put(Team.A, new GameMap.MapMemory(gameMap));
         mapMemory.put(Team.B, new GameMap.MapMemory(gameMap));
         mapMemory.put(Team.NEUTRAL, new GameMap.MapMemory(gameMap));
         upgrades.put(Team.A, EnumSet.noneOf(Upgrade.class));
         upgrades.put(Team.B, EnumSet.noneOf(Upgrade.class));
-        knownMineLocations.put(Team.A, new HashSet<MapLocation>());
-        knownMineLocations.put(Team.B, new HashSet<MapLocation>());
         research.put(Team.A, new EnumMap<Upgrade, Integer>(Upgrade.class));
         research.put(Team.B, new EnumMap<Upgrade, Integer>(Upgrade.class));
     }
@@ -129,8 +140,7 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
         teamSpawnRate = new double[]{GameConstants.HQ_SPAWN_DELAY, GameConstants.HQ_SPAWN_DELAY};
         
         // process all gameobjects
-        InternalObject[] gameObjects = new InternalObject[gameObjectsByID.size()];
-        gameObjects = gameObjectsByID.values().toArray(gameObjects);
+        InternalObject[] gameObjects = gameObjectsByID.snapshot();
         for (int i = 0; i < gameObjects.length; i++) {
             gameObjects[i].processBeginningOfRound();
         }
@@ -139,6 +149,18 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
 
     public double getEnergonDifference() {
         double diff = 0.;
+        if (robotState != null) {
+            RobotStateStore st = robotState;
+            for (int i = 0; i < st.count; i++) {
+                if (st.robots[i] == null)
+                    continue;
+                if (st.team[i] == Team.A.ordinal())
+                    diff += st.energon[i];
+                else if (st.team[i] == Team.B.ordinal())
+                    diff -= st.energon[i];
+            }
+            return diff;
+        }
         for (InternalObject o : gameObjectsByID.values())
             if (o instanceof InternalRobot) {
                 double energon = ((InternalRobot) o).getEnergonLevel();
@@ -156,8 +178,7 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
 
     public void processEndOfRound() {
         // process all gameobjects
-        InternalObject[] gameObjects = new InternalObject[gameObjectsByID.size()];
-        gameObjects = gameObjectsByID.values().toArray(gameObjects);
+        InternalObject[] gameObjects = gameObjectsByID.snapshot();
         for (int i = 0; i < gameObjects.length; i++) {
             gameObjects[i].processEndOfRound();
         }
@@ -231,11 +252,7 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
     }
     
     public int countEncampments(Team t) {
-    	int total = 0;
-    	Iterable<MapLocation> camps = getEncampmentsByTeam(t);
-    	for (MapLocation camp : camps)
-    		total++;
-    	return total;
+    	return encampments.count(t);
     }
 
     public DominationFactor getDominationFactor(Team winner) {
@@ -269,7 +286,7 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
     }
 
     public InternalObject getObject(MapLocation loc, RobotLevel level) {
-        return gameObjectsByLoc.get(new MapLocation3D(loc, level));
+        return gameObjectsByLoc.get(loc, level);
     }
 
     public <T extends InternalObject> T getObjectOfType(MapLocation loc, RobotLevel level, Class<T> cl) {
@@ -287,42 +304,47 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
         else
             return null;
     }
+
+    /**
+     * Same as getRobot(new MapLocation(x, y), level), without making the MapLocation.
+     */
+    public InternalRobot getRobot(int x, int y, RobotLevel level) {
+        InternalObject obj = gameObjectsByLoc.get(x, y, level);
+        if (obj instanceof InternalRobot)
+            return (InternalRobot) obj;
+        else
+            return null;
+    }
     
     public MapLocation[] getKnownMines(Team t) {
-    	ArrayList<MapLocation> locs = new ArrayList<MapLocation>();
-    	for (MapLocation m : knownMineLocations.get(t)) {
-    		if (mineLocations.get(m) != null && mineLocations.get(m) != t)
-    			locs.add(m);
-    	}
-    	return locs.toArray(new MapLocation[]{});
+    	return mines.getKnownMines(t).clone();
     }
     
     public void addKnownMineLocation(Team t, MapLocation loc) {
-    	knownMineLocations.get(t).add(loc);
+    	mines.addKnown(t, loc);
     }
     
     
     public boolean isKnownMineLocation(Team t, MapLocation loc) {
-    	return knownMineLocations.get(t).contains(loc);
+    	return mines.isKnown(t, loc);
     }
     
     public void addMine(Team t, MapLocation loc) {
-    	if(mineLocations.get(loc) == null) {
-    		mineLocations.put(loc, t);
+    	if(mines.add(t, loc)) {
     		if(t==Team.A || t==Team.B)
     			addKnownMineLocation(t, loc);
     	}
     }
     
     public void removeMines(Team t, MapLocation loc) {
-    	mineLocations.remove(loc);
-    	knownMineLocations.get(t).remove(loc);
+    	mines.remove(loc);
+    	mines.removeKnown(t, loc);
     	if (t != Team.NEUTRAL)
-    		knownMineLocations.get(t.opponent()).remove(loc);
+    		mines.removeKnown(t.opponent(), loc);
     }
     
     public Team getMine(MapLocation loc) {
-    	return mineLocations.get(loc);
+    	return mines.get(loc);
     }
     
     public void researchUpgrade(Team t, Upgrade u) {
@@ -346,8 +368,10 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
         if (gameObjectsByID.containsKey(o.getID()))
             return;
         gameObjectsByID.put(o.getID(), o);
+        o.addedOrder = objectsAdded++;
+        visionCoverage.add(o);
         if (o.getLocation() != null) {
-            gameObjectsByLoc.put(new MapLocation3D(o.getLocation(), o.getRobotLevel()), o);
+            gameObjectsByLoc.put(o.getLocation(), o.getRobotLevel(), o);
         }
 //        if (o instanceof InternalEncampment)
 //        {
@@ -356,28 +380,29 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
     }
     
     public boolean isEncampment(MapLocation loc) {
-    	return encampmentMap.containsKey(loc);
+    	return encampments.contains(loc);
     }
     
     public void addEncampment(MapLocation camp, Team team) {
-    	encampments.add(camp);
-    	encampmentMap.put(camp, team);
+    	encampments.add(camp, team);
     }
     
     public Team getEncampment(MapLocation loc) {
-    	return encampmentMap.get(loc);
+    	return encampments.getOwner(loc);
     }
     
-    public List<MapLocation> getAllEncampments() {
-    	return encampments;
+    /**
+     * Returns every encampment square.  The array is shared, so it must not be modified.
+     */
+    public MapLocation[] getAllEncampments() {
+    	return encampments.getAll();
     }
     
-    public List<MapLocation> getEncampmentsByTeam(final Team t) {
-    	ArrayList<MapLocation> camps = new ArrayList<MapLocation>();
-    	for (Entry<MapLocation, Team> entry : encampmentMap.entrySet())
-    		if (entry.getValue() == t)
-    			camps.add(entry.getKey());
-        return camps;
+    /**
+     * Returns the team's encampments.  The array is shared, so it must not be modified.
+     */
+    public MapLocation[] getEncampmentsByTeam(final Team t) {
+    	return encampments.getByTeam(t);
     }
 
     public Collection<InternalObject> allObjects() {
@@ -387,24 +412,25 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
     // TODO: move stuff to here
     // should only be called by InternalObject.setLocation
     public void notifyMovingObject(InternalObject o, MapLocation oldLoc, MapLocation newLoc) {
+        // the object moves even if the checks below fail
+        if (gameObjectsByID.get(o.getID()) == o)
+            visionCoverage.move(o, oldLoc, newLoc);
         if (oldLoc != null) {
-            MapLocation3D oldLoc3D = new MapLocation3D(oldLoc, o.getRobotLevel());
-            if (gameObjectsByLoc.get(oldLoc3D) != o) {
+            if (gameObjectsByLoc.get(oldLoc, o.getRobotLevel()) != o) {
                 ErrorReporter.report("Internal Error: invalid oldLoc in notifyMovingObject");
                 return;
             }
-            gameObjectsByLoc.remove(oldLoc3D);
+            gameObjectsByLoc.remove(oldLoc, o.getRobotLevel());
         }
         if (newLoc != null) {
-            gameObjectsByLoc.put(new MapLocation3D(newLoc, o.getRobotLevel()), o);
+            gameObjectsByLoc.put(newLoc, o.getRobotLevel(), o);
         }
     }
 
     public void removeObject(InternalObject o) {
         if (o.getLocation() != null) {
-            MapLocation3D loc3D = new MapLocation3D(o.getLocation(), o.getRobotLevel());
-            if (gameObjectsByLoc.get(loc3D) == o)
-                gameObjectsByLoc.remove(loc3D);
+            if (gameObjectsByLoc.get(o.getLocation(), o.getRobotLevel()) == o)
+                gameObjectsByLoc.remove(o.getLocation(), o.getRobotLevel());
             else
             	if (o instanceof InternalRobot) {
             		InternalRobot ir = (InternalRobot) o;
@@ -419,8 +445,12 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
         } else
             System.out.println("Couldn't remove " + o + " from the game");
 
-        if (gameObjectsByID.get(o.getID()) == o)
+        if (gameObjectsByID.get(o.getID()) == o) {
             gameObjectsByID.remove(o.getID());
+            o.addedOrder = -1;
+            visionCoverage.remove(o);
+        }
+        gameObjectsByLoc.forget(o);
 
         if (o instanceof InternalRobot) {
             InternalRobot r = (InternalRobot) o;
@@ -442,6 +472,14 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
     // TODO: optimize this too
     public int getUnitCount(Team team) {
         int result = 0;
+        if (robotState != null) {
+            RobotStateStore st = robotState;
+            for (int i = 0; i < st.count; i++) {
+                if (st.robots[i] != null && st.team[i] == team.ordinal())
+                    result++;
+            }
+            return result;
+        }
         for (InternalObject o : gameObjectsByID.values()) {
             if (!(o instanceof InternalRobot))
                 continue;
@@ -461,7 +499,7 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
 
     public boolean canMove(RobotLevel level, MapLocation loc) {
 
-        return gameMap.getTerrainTile(loc).isTraversableAtHeight(level) && (gameObjectsByLoc.get(new MapLocation3D(loc, level)) == null);
+        return gameMap.getTerrainTile(loc).isTraversableAtHeight(level) && (gameObjectsByLoc.get(loc, level) == null);
     }
 
     public void splashDamageGround(MapLocation loc, double damage, double falloutFraction) {
@@ -477,49 +515,57 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
         }
     }
 
+    /**
+     * Returns every object, in the order they were added.  The array is shared, so it must not be modified.
+     */
     public InternalObject[] getAllGameObjects() {
-        return gameObjectsByID.values().toArray(new InternalObject[gameObjectsByID.size()]);
+        return gameObjectsByID.snapshot();
     }
 
     public InternalRobot getRobotByID(int id) {
         return (InternalRobot) getObjectByID(id);
     }
 
+    /**
+     * Returns the store that this world's robots keep their state in, or null if each robot keeps its own.
+     */
+    RobotStateStore getRobotStateStore() {
+        return robotState;
+    }
+
+    // should only be called by InternalRobot
+    void notifyChanged(InternalRobot r, byte flag) {
+        if (flag == RobotStateStore.ENERGON_CHANGED)
+            energonChangedRobots.add(r);
+        else if (flag == RobotStateStore.SHIELD_CHANGED)
+            shieldChangedRobots.add(r);
+    }
+
     public Signal[] getAllSignals(boolean includeBytecodesUsedSignal) {
-        ArrayList<InternalRobot> energonChangedRobots = new ArrayList<InternalRobot>();
-        ArrayList<InternalRobot> fluxChangedRobots = new ArrayList<InternalRobot>();
-        ArrayList<InternalRobot> shieldChangedRobots = new ArrayList<InternalRobot>();
-        ArrayList<InternalRobot> allRobots = null;
-        if (includeBytecodesUsedSignal)
-            allRobots = new ArrayList<InternalRobot>();
-        for (InternalObject obj : gameObjectsByID.values()) {
-            if (!(obj instanceof InternalRobot))
-                continue;
-            InternalRobot r = (InternalRobot) obj;
-            if (includeBytecodesUsedSignal)
-                allRobots.add(r);
-            if (r.clearEnergonChanged()) {
-                energonChangedRobots.add(r);
-            }
-            if (r.clearFluxChanged()) {
-                fluxChangedRobots.add(r);
-            }
-            if (r.clearShieldChanged()) {
-            	shieldChangedRobots.add(r);
+        int n = energonChangedRobots.collect();
+        signals.add(new EnergonChangeSignal(energonChangedRobots.robots(), n));
+        energonChangedRobots.clear();
+        n = shieldChangedRobots.collect();
+        signals.add(new ShieldChangeSignal(shieldChangedRobots.robots(), n));
+        shieldChangedRobots.clear();
+
+        if (includeBytecodesUsedSignal) {
+            InternalObject[] gameObjects = gameObjectsByID.snapshot();
+            if (allRobots.length < gameObjects.length)
+                allRobots = new InternalRobot[gameObjects.length];
+            n = 0;
+            for (InternalObject obj : gameObjects) {
+                if (obj instanceof InternalRobot)
+                    allRobots[n++] = (InternalRobot) obj;
             }
+            signals.add(new BytecodesUsedSignal(allRobots, n));
+            Arrays.fill(allRobots, 0, n, null);
         }
-        signals.add(new EnergonChangeSignal(energonChangedRobots.toArray(new InternalRobot[]{})));
-//        signals.add(new FluxChangeSignal(fluxChangedRobots.toArray(new InternalRobot[]{})));
-        signals.add(new ShieldChangeSignal(shieldChangedRobots.toArray(new InternalRobot[]{})));
-
-        if (includeBytecodesUsedSignal)
-            signals.add(new BytecodesUsedSignal(allRobots.toArray(new InternalRobot[]{})));
         return signals.toArray(new Signal[signals.size()]);
     }
     
     public int getMessage(int channel) {
-    	Integer val = radio.get(channel);
-    	return val == null ? 0 : val;
+    	return channel >= 0 && channel < radio.length ? radio[channel] : 0;
     }
     
     public boolean hasUpgrade(Team t, Upgrade upgrade) {
@@ -531,9 +577,18 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
     		getBaseHQ(t.opponent()).suicide();
     	} else {
     		upgrades.get(t).add(upgrade);
+    		if (upgrade == Upgrade.VISION)
+    			visionCoverage.clear(t);
     	}
     }
 
+    /**
+     * Returns true if one of the team's robots is within radiusSquared of loc.
+     */
+    public boolean isCoveredBy(Team t, MapLocation loc, int radiusSquared) {
+        return visionCoverage.isCovered(t, loc, radiusSquared);
+    }
+
     public RoundStats getRoundStats() {
         return roundStats;
     }
@@ -566,7 +621,9 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
 
     public void removeDead() {
         boolean current = false;
-        for (InternalRobot r : deadRobots) {
+        // called after every attack, so don't make an iterator
+        for (int i = 0; i < deadRobots.size(); i++) {
+            InternalRobot r = deadRobots.get(i);
             if (r.getID() == RobotMonitor.getCurrentRobotID())
                 current = true;
             visitSignal(new DeathSignal(r));
@@ -596,22 +653,22 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
         
         switch (attacker.type) {
 		case SOLDIER:
-			Direction dir = Direction.NORTH;
-	    	MapLocation nearby;
 	    	InternalRobot nearbyrobot;
-	    	ArrayList<InternalRobot> todamage = new ArrayList<InternalRobot>();
-	    	do {
-	    		nearby = targetLoc.add(dir);
-	    		nearbyrobot = getRobot(nearby, level);
-	    		if (nearbyrobot != null)
-	    			if (nearbyrobot.getTeam() != attacker.getTeam())
-	    				todamage.add(nearbyrobot);
-	    		dir = dir.rotateLeft();
-	    	} while (dir != Direction.NORTH);
-	    	if (todamage.size()>0) {
-	            double damage = attacker.type.attackPower/todamage.size();
-	            for (InternalRobot r : todamage)
-	            	r.takeDamage(damage, attacker);
+	    	// count the enemies first, then split the damage between them; robots that die here aren't removed
+	    	// until removeDead, so the second pass sees the same robots
+	    	int enemies = 0;
+	    	for (Direction dir : SOLDIER_ATTACK_ORDER) {
+	    		nearbyrobot = getRobot(targetLoc.x + dir.dx, targetLoc.y + dir.dy, level);
+	    		if (nearbyrobot != null && nearbyrobot.getTeam() != attacker.getTeam())
+	    			enemies++;
+	    	}
+	    	if (enemies > 0) {
+	            double damage = attacker.type.attackPower/enemies;
+	            for (Direction dir : SOLDIER_ATTACK_ORDER) {
+	            	nearbyrobot = getRobot(targetLoc.x + dir.dx, targetLoc.y + dir.dy, level);
+	            	if (nearbyrobot != null && nearbyrobot.getTeam() != attacker.getTeam())
+	            		nearbyrobot.takeDamage(damage, attacker);
+	            }
 	    	}
 			break;
 		case ARTILLERY:
@@ -619,7 +676,7 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
 			for (int dx = -1; dx <= 1; dx++)
 				for (int dy = -1; dy <= 1; dy++) {
 
-					target = getRobot(targetLoc.add(dx, dy), level);
+					target = getRobot(targetLoc.x + dx, targetLoc.y + dy, level);
 
 					if (target != null)
 						if (dx == 0 && dy == 0)
@@ -660,8 +717,15 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
     }
 
     public void visitBroadcastSignal(BroadcastSignal s) {        
-    	radio.putAll(s.broadcastMap);
-    	s.broadcastMap = null;
+    	// a later broadcast on a channel overwrites an earlier one
+    	for (int i = 0; i < s.broadcastCount; i++) {
+    		int channel = s.broadcastChannels[i];
+    		if (channel >= 0 && channel < radio.length)
+    			radio[channel] = s.broadcastData[i];
+    	}
+    	s.broadcastChannels = null;
+    	s.broadcastData = null;
+    	s.broadcastCount = 0;
         addSignal(s);
     }
 
@@ -689,7 +753,7 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
             	setWinner(r.getTeam().opponent(), getDominationFactor(r.getTeam().opponent()));
             } else if (r.type.isEncampment)
             {
-            	encampmentMap.put(r.getLocation(), Team.NEUTRAL);
+            	encampments.setOwner(r.getLocation(), Team.NEUTRAL);
             }
         }
     }
@@ -770,7 +834,7 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
         
         if (s.getType().isEncampment)
         {
-        	encampmentMap.put(s.getLoc(), s.getTeam());
+        	encampments.setOwner(s.getLoc(), s.getTeam());
         }
 
         //note: this also adds the signal
@@ -821,7 +885,7 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
         	for (int dy=-dist; dy<=dist; dy++)
         	{
         		if (dx*dx+dy*dy > medbay.type.attackRadiusMaxSquared) continue;
-        		target = getRobot(targetLoc.add(dx, dy), level);
+        		target = getRobot(targetLoc.x + dx, targetLoc.y + dy, level);
         		if (target != null)
         			if (target.getTeam() == medbay.getTeam())
         				target.takeDamage(-medbay.type.attackPower, medbay);
@@ -841,7 +905,7 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
         	for (int dy=-dist; dy<=dist; dy++)
         	{
         		if (dx*dx+dy*dy > shields.type.attackRadiusMaxSquared) continue;
-        		target = getRobot(targetLoc.add(dx, dy), level);
+        		target = getRobot(targetLoc.x + dx, targetLoc.y + dy, level);
         		if (target != null)
         			if (target.getTeam() == shields.getTeam())
         				target.takeShieldedDamage(-shields.type.attackPower);
@@ -894,15 +958,49 @@ public class GameWorld extends BaseWorld<InternalObject> implements GenericWorld
             return (dotProduct * dotProduct >= rhs - 0.00001d);
     }
 
-    // TODO: make a faster implementation of this
+    // the squares a soldier's attack hits, in the order rotateLeft goes round them starting from NORTH
+    private static final Direction[] SOLDIER_ATTACK_ORDER = {
+            Direction.NORTH, Direction.NORTH_WEST, Direction.WEST, Direction.SOUTH_WEST,
+            Direction.SOUTH, Direction.SOUTH_EAST, Direction.EAST, Direction.NORTH_EAST
+    };
+
+    static final Comparator<InternalObject> ADDED_ORDER = new Comparator<InternalObject>() {
+        public int compare(InternalObject a, InternalObject b) {
+            return a.addedOrder < b.addedOrder ? -1 : (a.addedOrder == b.addedOrder ? 0 : 1);
+        }
+    };
+
+    /**
+     * Returns the objects within radiusSquared of center, in the same order as allObjects().  Only looks at the
+     * squares near center, unless the radius covers so much of the map that going through every object is cheaper.
+     */
+    public List<InternalObject> getObjectsWithinRadiusSq(MapLocation center, int radiusSquared) {
+        ArrayList<InternalObject> objects = new ArrayList<InternalObject>();
+        if (radiusSquared < 0)
+            return objects;
+        if ((long) gameObjectsByLoc.squaresWithin(center, radiusSquared) * RobotLevel.values().length > gameObjectsByID.size()) {
+            for (InternalObject o : gameObjectsByID.values()) {
+                if (o.getLocation() != null && o.getLocation().distanceSquaredTo(center) <= radiusSquared)
+                    objects.add(o);
+            }
+        } else {
+            gameObjectsByLoc.addObjectsWithin(center, radiusSquared, objects);
+            Collections.sort(objects, ADDED_ORDER);
+            // anything that has left the game but is still in the grid, e.g. because it moved afterwards, sorts first
+            int gone = 0;
+            while (gone < objects.size() && objects.get(gone).addedOrder < 0)
+                gone++;
+            if (gone > 0)
+                objects.subList(0, gone).clear();
+        }
+        return objects;
+    }
+
     protected InternalRobot[] getAllRobotsWithinRadiusDonutSq(MapLocation center, int outerRadiusSquared, int innerRadiusSquared) {
         ArrayList<InternalRobot> robots = new ArrayList<InternalRobot>();
 
-        for (InternalObject o : gameObjectsByID.values()) {
-            if (!(o instanceof InternalRobot))
-                continue;
-            if (o.getLocation() != null && o.getLocation().distanceSquaredTo(center) <= outerRadiusSquared
-                    && o.getLocation().distanceSquaredTo(center) > innerRadiusSquared)
+        for (InternalObject o : getObjectsWithinRadiusSq(center, outerRadiusSquared)) {
+            if (o instanceof InternalRobot && o.getLocation().distanceSquaredTo(center) > innerRadiusSquared)
                 robots.add((InternalRobot) o);
         }
 
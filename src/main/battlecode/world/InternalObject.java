@@ -9,6 +9,8 @@ public abstract class InternalObject extends BaseObject {
     protected volatile MapLocation myLocation;
     protected final RobotLevel myHeight;
     protected final GameWorld myGameWorld;
+    // the order in which the object was added to the game world, or -1 if it isn't in the game world
+    int addedOrder = -1;
 
     protected InternalObject(GameWorld gw, MapLocation loc, RobotLevel height, Team t) {
         super(gw, t);
@@ -1,6 +1,6 @@
 package battlecode.world;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Map;
 
 import battlecode.common.Direction;
@@ -25,13 +25,11 @@ import battlecode.world.signal.SpawnSignal;
 
 public class InternalRobot extends InternalObject implements Robot, GenericRobot {
 
-    protected volatile double myEnergonLevel;
-    protected volatile double myShieldLevel;
+    // energon, shields, delays and change flags are kept in a RobotStateStore, in this robot's slot
+    private final RobotStateStore state;
+    private final int slot;
     private volatile double flux;
     protected volatile Direction myDirection;
-    protected volatile boolean energonChanged = true;
-    protected volatile boolean shieldChanged = true;
-    private volatile boolean fluxChanged = true;
     protected volatile long controlBits;
     // is this used ever?
     protected volatile boolean hasBeenAttacked = false;
@@ -40,6 +38,14 @@ public class InternalRobot extends InternalObject implements Robot, GenericRobot
      * first index is robot type, second is direction, third is x or y
      */
     private static final Map<RobotType, int[][][]> offsets = GameMap.computeVisibleOffsets();
+    /**
+     * the eight directions to adjacent squares, so that looking at them doesn't copy Direction.values()
+     */
+    private static final Direction[] adjacent = Arrays.copyOf(Direction.values(), 8);
+    /**
+     * the squares next to a mine that a soldier with PICKAXE also mines
+     */
+    private static final Direction[] pickaxe = {Direction.NORTH, Direction.EAST, Direction.WEST, Direction.SOUTH};
     /**
      * number of bytecodes used in the most recent round
      */
@@ -49,9 +55,10 @@ public class InternalRobot extends InternalObject implements Robot, GenericRobot
     protected GameMap.MapMemory mapMemory;
     public final RobotType type;
 
-    private volatile int turnsUntilMovementIdle;
-    private volatile int turnsUntilAttackIdle;
-    private volatile HashMap<Integer, Integer> broadcastMap = new HashMap<Integer, Integer>();
+    // this turn's broadcasts, in the order they were made; reused every turn
+    private int[] broadcastChannels = new int[0];
+    private int[] broadcastData = new int[0];
+    private int broadcastCount;
     private boolean broadcasted = false;
     
     protected volatile boolean regen;
@@ -76,8 +83,14 @@ public class InternalRobot extends InternalObject implements Robot, GenericRobot
 //        myDirection = Direction.values()[gw.getRandGen().nextInt(8)];
         this.type = type;
 
-        myEnergonLevel = getMaxEnergon();
-        myShieldLevel = 0.0;
+        RobotStateStore store = gw.getRobotStateStore();
+        state = store != null ? store : new RobotStateStore(1);
+        slot = state.add(this);
+        state.energon[slot] = getMaxEnergon();
+        state.shield[slot] = 0.0;
+        state.changed[slot] = RobotStateStore.FLUX_CHANGED;
+        setChanged(RobotStateStore.ENERGON_CHANGED);
+        setChanged(RobotStateStore.SHIELD_CHANGED);
         
         researchRounds = 0;
         researchUpgrade = null;
@@ -200,8 +213,9 @@ public class InternalRobot extends InternalObject implements Robot, GenericRobot
         		if (--miningRounds==0) {
         			myGameWorld.visitSignal(new MineSignal(getLocation(), getTeam(), MineSignal.ADD));
         			if(myGameWorld.hasUpgrade(getTeam(), Upgrade.PICKAXE)) {
-        				for(Direction d: new Direction[]{Direction.NORTH, Direction.EAST, Direction.WEST, Direction.SOUTH}) {
-        					myGameWorld.visitSignal(new MineSignal(getLocation().add(d), getTeam(), MineSignal.ADD));
+        				MapLocation loc = getLocation();
+        				for(Direction d: pickaxe) {
+        					myGameWorld.visitSignal(new MineSignal(new MapLocation(loc.x + d.dx, loc.y + d.dy), getTeam(), MineSignal.ADD));
         				}
         			}
         		}
@@ -232,7 +246,7 @@ public class InternalRobot extends InternalObject implements Robot, GenericRobot
     		if (mines!=null && mines!=getTeam()) {
     			this.takeDamage(GameConstants.MINE_DAMAGE);
     			myGameWorld.addKnownMineLocation(getTeam(), getLocation());
-    			if (myEnergonLevel <= 0.0)
+    			if (state.energon[slot] <= 0.0)
     				return;
     		}
     	}
@@ -241,10 +255,10 @@ public class InternalRobot extends InternalObject implements Robot, GenericRobot
         	myGameWorld.visitSignal(attackSignal);
         	attackSignal = null;
         }
-        if (turnsUntilAttackIdle > 0)
-            turnsUntilAttackIdle--;
-        if (turnsUntilMovementIdle > 0)
-            turnsUntilMovementIdle--;
+        if (state.attackDelay[slot] > 0)
+            state.attackDelay[slot]--;
+        if (state.movementDelay[slot] > 0)
+            state.movementDelay[slot]--;
         if (type == RobotType.HQ)
         {
         	if (researchRounds > 0)
@@ -261,9 +275,9 @@ public class InternalRobot extends InternalObject implements Robot, GenericRobot
         boolean nearbyAlly = false;
         boolean nearbyEnemy = false;
         
-    	for(int i=0; i<8; i++) {
-    		Robot nearby = myGameWorld.getRobot(this.getLocation().add(Direction.values()[i]),
-    				RobotLevel.ON_GROUND);
+        MapLocation loc = getLocation();
+    	for (Direction d : adjacent) {
+    		Robot nearby = myGameWorld.getRobot(loc.x + d.dx, loc.y + d.dy, RobotLevel.ON_GROUND);
     		if(nearby != null) {
     			if(nearby.getTeam() == getTeam()) nearbyAlly = true;
     			else if(nearby.getTeam() == getTeam().opponent()) nearbyEnemy = true;
@@ -271,7 +285,7 @@ public class InternalRobot extends InternalObject implements Robot, GenericRobot
     	}
         
         // Soldiers Automatically Attack
-        if (type == RobotType.SOLDIER && nearbyEnemy && this.turnsUntilAttackIdle == 0) {
+        if (type == RobotType.SOLDIER && nearbyEnemy && state.attackDelay[slot] == 0) {
         	myGameWorld.visitSignal(new AttackSignal(this, getLocation(), RobotLevel.ON_GROUND));
         } // Medbays Auto Heal
         else if (type == RobotType.MEDBAY) {
@@ -288,16 +302,16 @@ public class InternalRobot extends InternalObject implements Robot, GenericRobot
         }
         
         // autosend aggregated broadcast
-        if (broadcasted) myGameWorld.visitSignal(new BroadcastSignal(this, broadcastMap));
+        if (broadcasted) myGameWorld.visitSignal(new BroadcastSignal(this, broadcastChannels, broadcastData, broadcastCount));
         
-    	broadcastMap = new HashMap<Integer, Integer>();
+        broadcastCount = 0;
         broadcasted = false;
         
         // shield decay
-        if (myShieldLevel > 0.0)
+        if (state.shield[slot] > 0.0)
         {
-        	shieldChanged = true;
-        	myShieldLevel = Math.max(0.0, myShieldLevel-GameConstants.SHIELD_DECAY_RATE);
+        	setChanged(RobotStateStore.SHIELD_CHANGED);
+        	state.shield[slot] = Math.max(0.0, state.shield[slot]-GameConstants.SHIELD_DECAY_RATE);
         }
     }
 
@@ -307,11 +321,11 @@ public class InternalRobot extends InternalObject implements Robot, GenericRobot
     }
 
     public double getEnergonLevel() {
-        return myEnergonLevel;
+        return state.energon[slot];
     }
     
     public double getShieldLevel() {
-    	return myShieldLevel;
+    	return state.shield[slot];
     }
 
     public double getFlux() {
@@ -375,28 +389,29 @@ public class InternalRobot extends InternalObject implements Robot, GenericRobot
     }
     
     public double changeShieldLevel(double amount) {
-        myShieldLevel += amount;
-        if (myShieldLevel > GameConstants.SHIELD_CAP) {
-        	myShieldLevel = GameConstants.SHIELD_CAP;
+        double shield = state.shield[slot] + amount;
+        if (shield > GameConstants.SHIELD_CAP) {
+        	shield = GameConstants.SHIELD_CAP;
         }
-        shieldChanged = true;
+        setChanged(RobotStateStore.SHIELD_CHANGED);
 
-        if (myShieldLevel <= 0) {
-        	double diff = -myShieldLevel;
-        	myShieldLevel = 0;
-        	return diff;
+        if (shield <= 0) {
+        	state.shield[slot] = 0;
+        	return -shield;
         }
+        state.shield[slot] = shield;
         return 0.0;
     }
 
     public void changeEnergonLevel(double amount) {
-        myEnergonLevel += amount;
-        if (myEnergonLevel > getMaxEnergon()) {
-            myEnergonLevel = getMaxEnergon();
+        double energon = state.energon[slot] + amount;
+        if (energon > getMaxEnergon()) {
+            energon = getMaxEnergon();
         }
-        energonChanged = true;
+        state.energon[slot] = energon;
+        setChanged(RobotStateStore.ENERGON_CHANGED);
 
-        if (myEnergonLevel <= 0) {
+        if (energon <= 0) {
             processLethalDamage();
         }
     }
@@ -406,71 +421,86 @@ public class InternalRobot extends InternalObject implements Robot, GenericRobot
     }
 
     public boolean clearEnergonChanged() {
-        boolean wasChanged = energonChanged;
-        energonChanged = false;
-        return wasChanged;
+        return clearChanged(RobotStateStore.ENERGON_CHANGED);
     }
     
     public boolean clearShieldChanged() {
-        boolean wasChanged = shieldChanged;
-        shieldChanged = false;
-        return wasChanged;
+        return clearChanged(RobotStateStore.SHIELD_CHANGED);
     }
 
     public boolean clearFluxChanged() {
-        boolean wasChanged = fluxChanged;
-        fluxChanged = false;
+        return clearChanged(RobotStateStore.FLUX_CHANGED);
+    }
+
+    boolean clearChanged(byte flag) {
+        boolean wasChanged = (state.changed[slot] & flag) != 0;
+        state.changed[slot] &= ~flag;
         return wasChanged;
     }
 
+    // the world is told when a flag is set, so that it only has to look at the robots that changed
+    private void setChanged(byte flag) {
+        if ((state.changed[slot] & flag) == 0) {
+            state.changed[slot] |= flag;
+            myGameWorld.notifyChanged(this, flag);
+        }
+    }
+
     public double getMaxEnergon() {
         return type.maxEnergon;
     }
 
     public void activateMovement(Signal s, int delay) {
         movementSignal = s;
-        turnsUntilMovementIdle = delay;
+        state.movementDelay[slot] = delay;
     }
     
     public void activateAttack(Signal s, int delay) {
         attackSignal = s;
-        turnsUntilAttackIdle = delay;
+        state.attackDelay[slot] = delay;
     }
 
     public void addBroadcast(int channel, int data) {
-    	broadcastMap.put(channel, data);
+        if (broadcastCount == broadcastChannels.length) {
+            int n = Math.max(16, 2 * broadcastCount);
+            broadcastChannels = Arrays.copyOf(broadcastChannels, n);
+            broadcastData = Arrays.copyOf(broadcastData, n);
+        }
+        broadcastChannels[broadcastCount] = channel;
+        broadcastData[broadcastCount] = data;
+        broadcastCount++;
         broadcasted = true;
     }
     
     public void activateMinelayer(Signal s, int delay) {
     	myGameWorld.visitSignal(s);
-    	turnsUntilAttackIdle = delay;
-    	turnsUntilMovementIdle = delay;
+    	state.attackDelay[slot] = delay;
+    	state.movementDelay[slot] = delay;
     	miningRounds = delay;
     }
     
     public void activateDefuser(Signal s, int delay, MapLocation target) {
     	myGameWorld.visitSignal(s);
-    	turnsUntilAttackIdle = delay;
-    	turnsUntilMovementIdle = delay;
+    	state.attackDelay[slot] = delay;
+    	state.movementDelay[slot] = delay;
     	defusingRounds = delay;
     	defusingLocation = target;
     }
     
     public void activateCapturing(CaptureSignal s, int delay) {
     	myGameWorld.visitSignal(s);
-    	turnsUntilAttackIdle = delay;
-    	turnsUntilMovementIdle = delay;
+    	state.attackDelay[slot] = delay;
+    	state.movementDelay[slot] = delay;
     	capturingRounds = delay;
     	capturingType = s.getType();
     }
     
     public int roundsUntilAttackIdle() {
-        return turnsUntilAttackIdle;
+        return state.attackDelay[slot];
     }
 
     public int roundsUntilMovementIdle() {
-        return turnsUntilMovementIdle;
+        return state.movementDelay[slot];
     }
 
     public boolean hasBroadcasted() {
@@ -564,5 +594,6 @@ public class InternalRobot extends InternalObject implements Robot, GenericRobot
         mapMemory = null;
         movementSignal = null;
         attackSignal = null;
+        state.remove(slot);
     }
 }
@@ -0,0 +1,136 @@
+package battlecode.world;
+
+import battlecode.common.MapLocation;
+import battlecode.common.Team;
+
+/**
+ * The mines on the map, and which of them each team knows about.  Each square of the map has a byte for the team
+ * of the mine on it, and each team has a bitset of the squares it knows to have mines, so looking up a square is an
+ * array read instead of a HashMap lookup.
+ * <p/>
+ * Each team's list of the enemy mines it knows about is built the first time it is asked for, and kept until a
+ * mine the team knows about is laid or defused, or the team learns about another mine.
+ */
+class MineGrid {
+
+    private static final Team[] TEAMS = Team.values();
+
+    private final int originX, originY, width, height;
+    // for each square, 0 if there is no mine, otherwise the ordinal of the mine's team plus one
+    private final byte[] mines;
+    // for each team, a bit for each square
+    private final long[][] known;
+    // for each team, the mines getKnownMines returns, or null if they have changed
+    private final MapLocation[][] knownMines;
+
+    MineGrid(GameMap map) {
+        MapLocation origin = map.getMapOrigin();
+        originX = origin.x;
+        originY = origin.y;
+        width = map.getWidth();
+        height = map.getHeight();
+        mines = new byte[width * height];
+        known = new long[TEAMS.length][(width * height + 63) >> 6];
+        knownMines = new MapLocation[TEAMS.length][];
+    }
+
+    // the index of the square, or -1 if the square is off the map
+    private int index(MapLocation loc) {
+        int x = loc.x - originX, y = loc.y - originY;
+        if (x < 0 || y < 0 || x >= width || y >= height)
+            return -1;
+        return y * width + x;
+    }
+
+    /**
+     * Returns the team of the mine at loc, or null if there isn't one.
+     */
+    Team get(MapLocation loc) {
+        int i = index(loc);
+        if (i < 0 || mines[i] == 0)
+            return null;
+        return TEAMS[mines[i] - 1];
+    }
+
+    /**
+     * Lays a mine at loc, unless there already is one there.  Mines can only be on the map, so a mine off the map is
+     * ignored.  Returns true if the mine was laid.
+     */
+    boolean add(Team t, MapLocation loc) {
+        int i = index(loc);
+        if (i < 0 || mines[i] != 0)
+            return false;
+        changed(i);
+        mines[i] = (byte) (t.ordinal() + 1);
+        return true;
+    }
+
+    void remove(MapLocation loc) {
+        int i = index(loc);
+        if (i < 0 || mines[i] == 0)
+            return;
+        changed(i);
+        mines[i] = 0;
+    }
+
+    boolean isKnown(Team t, MapLocation loc) {
+        int i = index(loc);
+        return i >= 0 && (known[t.ordinal()][i >> 6] & (1L << i)) != 0;
+    }
+
+    void addKnown(Team t, MapLocation loc) {
+        int i = index(loc);
+        if (i < 0 || (known[t.ordinal()][i >> 6] & (1L << i)) != 0)
+            return;
+        known[t.ordinal()][i >> 6] |= 1L << i;
+        knownMines[t.ordinal()] = null;
+    }
+
+    void removeKnown(Team t, MapLocation loc) {
+        int i = index(loc);
+        if (i < 0 || (known[t.ordinal()][i >> 6] & (1L << i)) == 0)
+            return;
+        known[t.ordinal()][i >> 6] &= ~(1L << i);
+        knownMines[t.ordinal()] = null;
+    }
+
+    /**
+     * Returns the locations that t knows to have mines of another team, in row major order.  The array is shared,
+     * so callers must not modify it.
+     */
+    MapLocation[] getKnownMines(Team t) {
+        MapLocation[] locs = knownMines[t.ordinal()];
+        if (locs == null) {
+            long[] bits = known[t.ordinal()];
+            int own = t.ordinal() + 1;
+            int count = 0;
+            for (int w = 0; w < bits.length; w++) {
+                for (long b = bits[w]; b != 0; b &= b - 1) {
+                    int i = (w << 6) + Long.numberOfTrailingZeros(b);
+                    if (mines[i] != 0 && mines[i] != own)
+                        count++;
+                }
+            }
+            locs = new MapLocation[count];
+            int n = 0;
+            for (int w = 0; w < bits.length; w++) {
+                for (long b = bits[w]; b != 0; b &= b - 1) {
+                    int i = (w << 6) + Long.numberOfTrailingZeros(b);
+                    if (mines[i] != 0 && mines[i] != own)
+                        locs[n++] = new MapLocation(originX + i % width, originY + i / width);
+                }
+            }
+            knownMines[t.ordinal()] = locs;
+        }
+        return locs;
+    }
+
+    // the mine at square i is about to change, so forget the lists of the teams that know about it
+    private void changed(int i) {
+        for (int t = 0; t < TEAMS.length; t++) {
+            if ((known[t][i >> 6] & (1L << i)) != 0)
+                knownMines[t] = null;
+        }
+    }
+
+}
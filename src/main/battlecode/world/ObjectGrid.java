@@ -0,0 +1,145 @@
+package battlecode.world;
+
+import battlecode.common.MapLocation;
+import battlecode.common.RobotLevel;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The objects on the map, indexed by location and level.  Each square of the map has one slot per RobotLevel in a
+ * flat array, so looking up an object is a bounds check and an array read, and doesn't create a MapLocation3D.
+ * <p/>
+ * Objects aren't normally off the map, but nothing stops the engine from putting one there, so those are kept in
+ * a HashMap, the way all objects used to be.
+ * <p/>
+ * Like that HashMap, a square holds one object per level, and putting an object where there already is one
+ * replaces it, e.g. when a soldier turns into an encampment.  The object that was replaced is still in the game
+ * until it is removed, so the grid remembers it, for radius queries.
+ */
+class ObjectGrid {
+
+    private static final RobotLevel[] LEVELS = RobotLevel.values();
+
+    private final int originX, originY, width, height;
+    private final InternalObject[] cells;
+    private final Map<MapLocation3D, InternalObject> offMap = new HashMap<MapLocation3D, InternalObject>();
+    // objects that another object has replaced in the grid
+    private final Set<InternalObject> displaced = new HashSet<InternalObject>();
+
+    ObjectGrid(GameMap map) {
+        MapLocation origin = map.getMapOrigin();
+        originX = origin.x;
+        originY = origin.y;
+        width = map.getWidth();
+        height = map.getHeight();
+        cells = new InternalObject[width * height * LEVELS.length];
+    }
+
+    // the index of the square's first slot, or -1 if the square is off the map
+    private int index(int x, int y) {
+        x -= originX;
+        y -= originY;
+        if (x < 0 || y < 0 || x >= width || y >= height)
+            return -1;
+        return (y * width + x) * LEVELS.length;
+    }
+
+    /**
+     * Returns the object at the given square and level, or null if there isn't one.
+     */
+    InternalObject get(int x, int y, RobotLevel level) {
+        int i = index(x, y);
+        if (i < 0)
+            return offMap.isEmpty() ? null : offMap.get(new MapLocation3D(new MapLocation(x, y), level));
+        return cells[i + level.ordinal()];
+    }
+
+    InternalObject get(MapLocation loc, RobotLevel level) {
+        int i = index(loc.x, loc.y);
+        if (i < 0)
+            return offMap.isEmpty() ? null : offMap.get(new MapLocation3D(loc, level));
+        return cells[i + level.ordinal()];
+    }
+
+    void put(MapLocation loc, RobotLevel level, InternalObject o) {
+        int i = index(loc.x, loc.y);
+        InternalObject old;
+        if (i < 0)
+            old = offMap.put(new MapLocation3D(loc, level), o);
+        else {
+            old = cells[i + level.ordinal()];
+            cells[i + level.ordinal()] = o;
+        }
+        if (old != null && old != o)
+            displaced.add(old);
+    }
+
+    void remove(MapLocation loc, RobotLevel level) {
+        int i = index(loc.x, loc.y);
+        if (i < 0)
+            offMap.remove(new MapLocation3D(loc, level));
+        else
+            cells[i + level.ordinal()] = null;
+    }
+
+    /**
+     * Should be called when an object leaves the game.
+     */
+    void forget(InternalObject o) {
+        if (!displaced.isEmpty())
+            displaced.remove(o);
+    }
+
+    /**
+     * Returns the number of squares on the map that addObjectsWithin would look at.
+     */
+    int squaresWithin(MapLocation center, int radiusSquared) {
+        if (radiusSquared < 0)
+            return 0;
+        int r = (int) Math.sqrt(radiusSquared);
+        int w = Math.min(center.x - originX + r, width - 1) - Math.max(center.x - originX - r, 0) + 1;
+        int h = Math.min(center.y - originY + r, height - 1) - Math.max(center.y - originY - r, 0) + 1;
+        return w > 0 && h > 0 ? w * h : 0;
+    }
+
+    /**
+     * Adds every object within radiusSquared of center to out, in no particular order.  Only looks at the squares
+     * near center.
+     */
+    void addObjectsWithin(MapLocation center, int radiusSquared, Collection<InternalObject> out) {
+        if (radiusSquared < 0)
+            return;
+        int r = (int) Math.sqrt(radiusSquared);
+        int cx = center.x - originX, cy = center.y - originY;
+        int minX = Math.max(cx - r, 0), maxX = Math.min(cx + r, width - 1);
+        int minY = Math.max(cy - r, 0), maxY = Math.min(cy + r, height - 1);
+        for (int y = minY; y <= maxY; y++) {
+            int dy = y - cy;
+            for (int x = minX; x <= maxX; x++) {
+                int dx = x - cx;
+                if (dx * dx + dy * dy > radiusSquared)
+                    continue;
+                int i = (y * width + x) * LEVELS.length;
+                for (int l = 0; l < LEVELS.length; l++) {
+                    if (cells[i + l] != null)
+                        out.add(cells[i + l]);
+                }
+            }
+        }
+        if (!offMap.isEmpty()) {
+            for (InternalObject o : offMap.values()) {
+                if (o.getLocation().distanceSquaredTo(center) <= radiusSquared)
+                    out.add(o);
+            }
+        }
+        for (InternalObject o : displaced) {
+            if (o.getLocation() != null && o.getLocation().distanceSquaredTo(center) <= radiusSquared)
+                out.add(o);
+        }
+    }
+
+}
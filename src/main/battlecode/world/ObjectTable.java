@@ -0,0 +1,185 @@
+package battlecode.world;
+
+import java.lang.reflect.Array;
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The objects in a world, by ID.  IDs are handed out one after another starting from 1, so the objects are kept in
+ * an array indexed by ID, and looking one up doesn't box the ID or hash it.
+ * <p/>
+ * The objects are also kept in the order they were added, which is the order they are iterated in, like a
+ * LinkedHashMap.  Removing an object leaves a hole in that order, which is closed up when there are enough of them.
+ * snapshot() returns the objects in order as an array, which is built once and kept until an object is added or
+ * removed, so going through every object each round doesn't allocate anything unless something changed.
+ */
+class ObjectTable<T extends BaseObject> {
+
+    private final Class<T> type;
+    private T[] byID;
+    // the objects in the order they were added, with null where one has been removed
+    private T[] ordered;
+    // for each ID, the object's index in ordered
+    private int[] position;
+    // the number of entries in ordered that have been used, including holes
+    private int end;
+    private int size;
+    private int modCount;
+    private T[] snapshot;
+
+    private final Collection<T> values = new AbstractCollection<T>() {
+        public Iterator<T> iterator() {
+            return new Iterator<T>() {
+                private final int expectedModCount = modCount;
+                private int next = skipHoles(0);
+
+                public boolean hasNext() {
+                    return next < end;
+                }
+
+                public T next() {
+                    if (modCount != expectedModCount)
+                        throw new ConcurrentModificationException();
+                    if (next >= end)
+                        throw new NoSuchElementException();
+                    T o = ordered[next];
+                    next = skipHoles(next + 1);
+                    return o;
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        public int size() {
+            return size;
+        }
+    };
+
+    ObjectTable(Class<T> type) {
+        this.type = type;
+        byID = newArray(64);
+        ordered = newArray(64);
+        position = new int[64];
+    }
+
+    @SuppressWarnings("unchecked")
+    private T[] newArray(int length) {
+        return (T[]) Array.newInstance(type, length);
+    }
+
+    private int skipHoles(int i) {
+        while (i < end && ordered[i] == null)
+            i++;
+        return i;
+    }
+
+    /**
+     * Returns the object with the given ID, or null if there isn't one.
+     */
+    T get(int id) {
+        return id >= 0 && id < byID.length ? byID[id] : null;
+    }
+
+    boolean containsKey(int id) {
+        return get(id) != null;
+    }
+
+    /**
+     * Adds an object, or replaces the object with the same ID, in which case the new object takes the old one's
+     * place in the order.  The ID must be the object's.
+     */
+    void put(int id, T o) {
+        if (id < 0)
+            throw new IllegalArgumentException("negative ID " + id);
+        if (id >= byID.length) {
+            int n = Math.max(id + 1, 2 * byID.length);
+            byID = Arrays.copyOf(byID, n);
+            position = Arrays.copyOf(position, n);
+        }
+        if (byID[id] != null)
+            ordered[position[id]] = o;
+        else {
+            if (end == ordered.length) {
+                if (end - size > size)
+                    compact();
+                else
+                    ordered = Arrays.copyOf(ordered, 2 * ordered.length);
+            }
+            position[id] = end;
+            ordered[end++] = o;
+            size++;
+        }
+        byID[id] = o;
+        changed();
+    }
+
+    /**
+     * Removes the object with the given ID, if there is one.
+     */
+    void remove(int id) {
+        if (get(id) == null)
+            return;
+        byID[id] = null;
+        ordered[position[id]] = null;
+        size--;
+        if (end - size > Math.max(size, 32))
+            compact();
+        changed();
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the objects in the order they were added.  The collection is a view, and can't be modified through.
+     */
+    Collection<T> values() {
+        return values;
+    }
+
+    /**
+     * Returns the objects in the order they were added.  The array is shared, so callers must not modify it, but it
+     * isn't changed when objects are added or removed afterwards.
+     */
+    T[] snapshot() {
+        if (snapshot == null) {
+            T[] s = newArray(size);
+            int n = 0;
+            for (int i = 0; i < end; i++) {
+                if (ordered[i] != null)
+                    s[n++] = ordered[i];
+            }
+            snapshot = s;
+        }
+        return snapshot;
+    }
+
+    private void changed() {
+        modCount++;
+        snapshot = null;
+    }
+
+    // closes up the holes in ordered
+    private void compact() {
+        int n = 0;
+        for (int i = 0; i < end; i++) {
+            T o = ordered[i];
+            if (o != null) {
+                ordered[n] = o;
+                position[o.getID()] = n;
+                n++;
+            }
+        }
+        Arrays.fill(ordered, n, end, null);
+        end = n;
+    }
+
+}
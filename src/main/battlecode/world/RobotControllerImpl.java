@@ -9,6 +9,7 @@ import static battlecode.common.GameActionExceptionType.NOT_ENOUGH_RESOURCE;
 import static battlecode.common.GameActionExceptionType.NO_ROBOT_THERE;
 import static battlecode.common.GameActionExceptionType.OUT_OF_RANGE;
 
+import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -39,8 +40,6 @@ import battlecode.world.signal.MovementSignal;
 import battlecode.world.signal.ResearchSignal;
 import battlecode.world.signal.SpawnSignal;
 
-import com.google.common.base.Predicate;
-import com.google.common.collect.Iterables;
 
 
 /*
@@ -204,7 +203,7 @@ public class RobotControllerImpl extends ControllerShared implements RobotContro
             throw new GameActionException(CANT_DO_THAT_BRO, "Must specify a valid encampment type to create");
     	assertNotMoving();
         assertIsEncampment(getLocation());
-        double cost = GameConstants.CAPTURE_POWER_COST * (gameWorld.getNumCapturing(getTeam()) + gameWorld.getEncampmentsByTeam(getTeam()).size() + 1);
+        double cost = GameConstants.CAPTURE_POWER_COST * (gameWorld.getNumCapturing(getTeam()) + gameWorld.countEncampments(getTeam()) + 1);
         assertHaveResource(cost);
     	gameWorld.adjustResources(getTeam(), -cost);
         robot.activateCapturing(new CaptureSignal(getLocation(), type, robot.getTeam(), false, robot), GameConstants.CAPTURE_ROUND_DELAY);
@@ -212,7 +211,7 @@ public class RobotControllerImpl extends ControllerShared implements RobotContro
     }
     
     public double senseCaptureCost() {
-    	return GameConstants.CAPTURE_POWER_COST * (gameWorld.getNumCapturing(getTeam()) + gameWorld.getEncampmentsByTeam(getTeam()).size() + 1);
+    	return GameConstants.CAPTURE_POWER_COST * (gameWorld.getNumCapturing(getTeam()) + gameWorld.countEncampments(getTeam()) + 1);
     }
     
     public void researchUpgrade(Upgrade upgrade) throws GameActionException {
@@ -308,15 +307,7 @@ public class RobotControllerImpl extends ControllerShared implements RobotContro
         if (robot.myLocation.distanceSquaredTo(loc) <= sensorRadius)
         	return true;
         
-        for (InternalObject o : gameWorld.allObjects())
-        {
-        	if  ((Robot.class.isInstance(o)) 
-        			&& o.getTeam() == robot.getTeam()
-        			&& loc.distanceSquaredTo(o.getLocation()) <= sensorRadius)
-        		return true;
-        		
-        }
-        return false;
+        return gameWorld.isCoveredBy(robot.getTeam(), loc, sensorRadius);
     	// make global vision work on this.
     	// MAKE SURE YOU CANT GLOBL DEFUSE SHIT OTHERWISE YOURE GUNNA GET G'D
 //        MapLocation myLoc = getLocation();
@@ -335,53 +326,49 @@ public class RobotControllerImpl extends ControllerShared implements RobotContro
         return gameWorld.getObject(loc, RobotLevel.ON_GROUND);
     }
 
-    @SuppressWarnings("unchecked")
     public <T extends GameObject> T[] senseNearbyGameObjects(final Class<T> type) {
-        Predicate<InternalObject> p = new Predicate<InternalObject>() {
-            public boolean apply(InternalObject o) {
-                return checkCanSense(o) && (type.isInstance(o)) && (!o.equals(robot));
-            }
-        };
-        return Iterables.toArray((Iterable<T>) Iterables.filter(gameWorld.allObjects(), p), type);
+        List<InternalObject> objects = new ArrayList<InternalObject>();
+        for (InternalObject o : gameWorld.allObjects()) {
+            if (checkCanSense(o) && (type.isInstance(o)) && (!o.equals(robot)))
+                objects.add(o);
+        }
+        return toArray(objects, type);
     }
     
-    @SuppressWarnings("unchecked")
 	public <T extends GameObject> T[] senseNearbyGameObjects(final Class<T> type, final int radiusSquared) {
-        Predicate<InternalObject> p = new Predicate<InternalObject>() {
-            public boolean apply(InternalObject o) {
-                return o.myLocation.distanceSquaredTo(robot.myLocation) <= radiusSquared 
-                		&& checkCanSense(o) && (type.isInstance(o)) && (!o.equals(robot));
-            }
-        };
-        return Iterables.toArray((Iterable<T>) Iterables.filter(gameWorld.allObjects(), p), type);
+        List<InternalObject> objects = new ArrayList<InternalObject>();
+        for (InternalObject o : gameWorld.getObjectsWithinRadiusSq(robot.myLocation, radiusSquared)) {
+            if (checkCanSense(o) && (type.isInstance(o)) && (!o.equals(robot)))
+                objects.add(o);
+        }
+        return toArray(objects, type);
     }
 
-    @SuppressWarnings("unchecked")
 	public <T extends GameObject> T[] senseNearbyGameObjects(final Class<T> type, final int radiusSquared, final Team team) {
-        Predicate<InternalObject> p = new Predicate<InternalObject>() {
-            public boolean apply(InternalObject o) {
-                return o.myLocation.distanceSquaredTo(robot.myLocation) <= radiusSquared
-                		&& o.getTeam() == team
-                		&& checkCanSense(o) && (type.isInstance(o)) && (!o.equals(robot));
-            }
-        };
-        return Iterables.toArray((Iterable<T>) Iterables.filter(gameWorld.allObjects(), p), type);
+        List<InternalObject> objects = new ArrayList<InternalObject>();
+        for (InternalObject o : gameWorld.getObjectsWithinRadiusSq(robot.myLocation, radiusSquared)) {
+            if (o.getTeam() == team && checkCanSense(o) && (type.isInstance(o)) && (!o.equals(robot)))
+                objects.add(o);
+        }
+        return toArray(objects, type);
     }
    
     
     /**
      * Private version used for engine checks to see if there is a robot w/ a given characteristic
      */
-    @SuppressWarnings("unchecked")
 	private <T extends GameObject> T[] getGameObjectsNearLocation (final Class<T> type, final MapLocation location, final int radiusSquared, final Team team) {
-        Predicate<InternalObject> p = new Predicate<InternalObject>() {
-            public boolean apply(InternalObject o) {
-                return (type.isInstance(o)) &&
-                		o.getTeam() == team &&
-                		location.distanceSquaredTo(o.getLocation()) <= radiusSquared;
-            }
-        };
-        return Iterables.toArray((Iterable<T>) Iterables.filter(gameWorld.allObjects(), p), type);
+        List<InternalObject> objects = new ArrayList<InternalObject>();
+        for (InternalObject o : gameWorld.getObjectsWithinRadiusSq(location, radiusSquared)) {
+            if ((type.isInstance(o)) && o.getTeam() == team)
+                objects.add(o);
+        }
+        return toArray(objects, type);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T[] toArray(List<InternalObject> objects, Class<T> type) {
+        return objects.toArray((T[]) Array.newInstance(type, objects.size()));
     }
     
     public RobotInfo senseRobotInfo(Robot r) throws GameActionException {
@@ -429,11 +416,11 @@ public class RobotControllerImpl extends ControllerShared implements RobotContro
     }
     
     public MapLocation[] senseAllEncampments() {
-    	return gameWorld.getAllEncampments().toArray(new MapLocation[0]);
+    	return gameWorld.getAllEncampments().clone();
     }
     
     public MapLocation[] senseAlliedEncampments() {
-    	return gameWorld.getEncampmentsByTeam(getTeam()).toArray(new MapLocation[]{});
+    	return gameWorld.getEncampmentsByTeam(getTeam()).clone();
     }
     
     public Team senseMine(MapLocation loc) {
@@ -0,0 +1,73 @@
+package battlecode.world;
+
+import java.util.Arrays;
+
+/**
+ * The numeric state of robots that the engine goes over every round, kept in parallel arrays instead of in the
+ * robots' own fields.  Each robot has a slot, which it reads and writes its state through, so a pass over every
+ * robot's energon or team is a loop over a few arrays rather than a walk over robots all over the heap.
+ * <p/>
+ * With bc.engine.robot-state-arrays set, a GameWorld keeps one store for all of its robots, and uses it for the
+ * passes it makes at the end of each round.  Otherwise each robot has a store of its own with a single slot, and the
+ * world goes over its robots as usual.
+ * <p/>
+ * Slots are handed out in the order robots are created, which is also the order the world keeps its objects in,
+ * and aren't reused, so a robot's state can still be read after it has been removed from the game.
+ */
+class RobotStateStore {
+
+    static final byte ENERGON_CHANGED = 1;
+    static final byte SHIELD_CHANGED = 2;
+    static final byte FLUX_CHANGED = 4;
+
+    // the robot in each slot, or null if the robot has been removed from the game
+    InternalRobot[] robots;
+    double[] energon;
+    double[] shield;
+    int[] attackDelay;
+    int[] movementDelay;
+    byte[] changed;
+    byte[] team;
+    int count;
+
+    RobotStateStore() {
+        this(64);
+    }
+
+    RobotStateStore(int capacity) {
+        robots = new InternalRobot[capacity];
+        energon = new double[capacity];
+        shield = new double[capacity];
+        attackDelay = new int[capacity];
+        movementDelay = new int[capacity];
+        changed = new byte[capacity];
+        team = new byte[capacity];
+    }
+
+    /**
+     * Returns a new slot for the robot.
+     */
+    int add(InternalRobot r) {
+        if (count == robots.length) {
+            int n = 2 * count;
+            robots = Arrays.copyOf(robots, n);
+            energon = Arrays.copyOf(energon, n);
+            shield = Arrays.copyOf(shield, n);
+            attackDelay = Arrays.copyOf(attackDelay, n);
+            movementDelay = Arrays.copyOf(movementDelay, n);
+            changed = Arrays.copyOf(changed, n);
+            team = Arrays.copyOf(team, n);
+        }
+        robots[count] = r;
+        team[count] = (byte) r.getTeam().ordinal();
+        return count++;
+    }
+
+    /**
+     * Should be called when the robot in the slot is removed from the game.  Its state is kept.
+     */
+    void remove(int slot) {
+        robots[slot] = null;
+    }
+
+}
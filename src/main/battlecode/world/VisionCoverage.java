@@ -0,0 +1,130 @@
+package battlecode.world;
+
+import battlecode.common.MapLocation;
+import battlecode.common.Team;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Answers "is this square within radiusSquared of one of this team's robots?" in constant time, which is what
+ * RobotControllerImpl.checkCanSense asks for every object a robot senses.
+ * <p/>
+ * For each team, and each sensor radius that has been asked about, it keeps a count for every square of the map of
+ * the team's robots that are within that radius of it.  A count is built the first time its radius is asked about,
+ * and from then on is updated whenever one of the team's robots is added, moves or is removed.  When a team gets
+ * the VISION upgrade every one of its robots senses farther, so its counts are thrown away, and rebuilt for the new
+ * radii as they are asked about.
+ */
+class VisionCoverage {
+
+    private final GameWorld world;
+    private final int originX, originY, width, height;
+
+    // for each team, radiusSquared -> count for each square
+    private final List<Map<Integer, int[]>> counts = new ArrayList<Map<Integer, int[]>>();
+    // radiusSquared -> the offsets {dx0, dy0, dx1, dy1, ...} of the squares within that radius
+    private final Map<Integer, int[]> offsets = new HashMap<Integer, int[]>();
+
+    VisionCoverage(GameWorld world, GameMap map) {
+        this.world = world;
+        MapLocation origin = map.getMapOrigin();
+        originX = origin.x;
+        originY = origin.y;
+        width = map.getWidth();
+        height = map.getHeight();
+        for (int i = 0; i < Team.values().length; i++)
+            counts.add(new HashMap<Integer, int[]>());
+    }
+
+    /**
+     * Returns true if one of the team's robots is within radiusSquared of loc.
+     */
+    boolean isCovered(Team team, MapLocation loc, int radiusSquared) {
+        int x = loc.x - originX, y = loc.y - originY;
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            // not worth keeping counts for
+            for (InternalObject o : world.allObjects()) {
+                if (o instanceof InternalRobot && o.getTeam() == team && loc.distanceSquaredTo(o.getLocation()) <= radiusSquared)
+                    return true;
+            }
+            return false;
+        }
+        Map<Integer, int[]> teamCounts = counts.get(team.ordinal());
+        int[] c = teamCounts.get(radiusSquared);
+        if (c == null) {
+            c = new int[width * height];
+            int[] d = offsets(radiusSquared);
+            for (InternalObject o : world.allObjects()) {
+                if (o instanceof InternalRobot && o.getTeam() == team && o.getLocation() != null)
+                    update(c, d, o.getLocation(), 1);
+            }
+            teamCounts.put(radiusSquared, c);
+        }
+        return c[y * width + x] > 0;
+    }
+
+    /**
+     * Forgets the counts for a team's old sensor radii, e.g. after the team gets the VISION upgrade.
+     */
+    void clear(Team team) {
+        counts.get(team.ordinal()).clear();
+    }
+
+    void add(InternalObject o) {
+        if (o instanceof InternalRobot && o.getLocation() != null)
+            updateAll(o.getTeam(), o.getLocation(), 1);
+    }
+
+    void move(InternalObject o, MapLocation oldLoc, MapLocation newLoc) {
+        if (!(o instanceof InternalRobot))
+            return;
+        if (oldLoc != null)
+            updateAll(o.getTeam(), oldLoc, -1);
+        if (newLoc != null)
+            updateAll(o.getTeam(), newLoc, 1);
+    }
+
+    void remove(InternalObject o) {
+        if (o instanceof InternalRobot && o.getLocation() != null)
+            updateAll(o.getTeam(), o.getLocation(), -1);
+    }
+
+    private void updateAll(Team team, MapLocation loc, int delta) {
+        for (Map.Entry<Integer, int[]> e : counts.get(team.ordinal()).entrySet())
+            update(e.getValue(), offsets(e.getKey()), loc, delta);
+    }
+
+    private void update(int[] c, int[] d, MapLocation loc, int delta) {
+        int cx = loc.x - originX, cy = loc.y - originY;
+        for (int i = 0; i < d.length; i += 2) {
+            int x = cx + d[i], y = cy + d[i + 1];
+            if (x >= 0 && y >= 0 && x < width && y < height)
+                c[y * width + x] += delta;
+        }
+    }
+
+    private int[] offsets(int radiusSquared) {
+        int[] d = offsets.get(radiusSquared);
+        if (d == null) {
+            int r = (int) Math.sqrt(radiusSquared);
+            List<Integer> l = new ArrayList<Integer>();
+            for (int dx = -r; dx <= r; dx++) {
+                for (int dy = -r; dy <= r; dy++) {
+                    if (dx * dx + dy * dy <= radiusSquared) {
+                        l.add(dx);
+                        l.add(dy);
+                    }
+                }
+            }
+            d = new int[l.size()];
+            for (int i = 0; i < d.length; i++)
+                d[i] = l.get(i);
+            offsets.put(radiusSquared, d);
+        }
+        return d;
+    }
+
+}
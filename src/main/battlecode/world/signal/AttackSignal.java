@@ -29,6 +29,13 @@ public class AttackSignal extends Signal {
      */
     public final RobotLevel targetHeight;
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private AttackSignal() {
+        robotID = 0;
+        targetLoc = null;
+        targetHeight = null;
+    }
+
     /**
      * Creates a signal for a robot broadcast.
      *
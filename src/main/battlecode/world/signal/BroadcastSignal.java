@@ -1,7 +1,5 @@
 package battlecode.world.signal;
 
-import java.util.HashMap;
-
 import battlecode.engine.signal.Signal;
 import battlecode.world.InternalRobot;
 
@@ -18,16 +16,32 @@ public class BroadcastSignal extends Signal {
      * TheID of the robot that broadcasted the message.
      */
     public final int robotID;
-    public transient HashMap<Integer, Integer> broadcastMap;
+    /**
+     * The channels the robot broadcast on and what it broadcast on them, in the order it broadcast them.  Only the
+     * first broadcastCount of each are used.  The arrays belong to the robot, which reuses them next turn.
+     */
+    public transient int[] broadcastChannels;
+    public transient int[] broadcastData;
+    public transient int broadcastCount;
+
+    // used when reading match files; BinaryInputStream sets the fields
+    private BroadcastSignal() {
+        robotID = 0;
+    }
 
     /**
      * Creates a signal for a robot broadcast.
      *
      * @param robot the robot that broadcast the message
+     * @param broadcastChannels the channels the robot broadcast on
+     * @param broadcastData what the robot broadcast on each channel
+     * @param broadcastCount the number of broadcasts
      */
-    public BroadcastSignal(InternalRobot robot, HashMap<Integer, Integer> broadcastMap) {
+    public BroadcastSignal(InternalRobot robot, int[] broadcastChannels, int[] broadcastData, int broadcastCount) {
         this.robotID = robot.getID();
-        this.broadcastMap = broadcastMap;
+        this.broadcastChannels = broadcastChannels;
+        this.broadcastData = broadcastData;
+        this.broadcastCount = broadcastCount;
     }
 
     /**
@@ -22,10 +22,23 @@ public class BytecodesUsedSignal extends Signal {
      */
     private final int[] numBytecodes;
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private BytecodesUsedSignal() {
+        robotIDs = null;
+        numBytecodes = null;
+    }
+
     public BytecodesUsedSignal(InternalRobot[] robots) {
-        robotIDs = new int[robots.length];
-        numBytecodes = new int[robots.length];
-        for (int i = 0; i < robots.length; i++) {
+        this(robots, robots.length);
+    }
+
+    /**
+     * Creates a signal for the first count robots in the given array.
+     */
+    public BytecodesUsedSignal(InternalRobot[] robots, int count) {
+        robotIDs = new int[count];
+        numBytecodes = new int[count];
+        for (int i = 0; i < count; i++) {
             robotIDs[i] = robots[i].getID();
             numBytecodes[i] = robots[i].getBytecodesUsed();
         }
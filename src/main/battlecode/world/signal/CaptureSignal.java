@@ -50,6 +50,16 @@ public class CaptureSignal extends Signal {
     private final boolean hasHandling;
 
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private CaptureSignal() {
+        robotID = 0;
+        parentID = 0;
+        loc = null;
+        type = null;
+        team = null;
+        hasHandling = false;
+    }
+
     /**
      * Creates a capture signal for capture which is starting
      */
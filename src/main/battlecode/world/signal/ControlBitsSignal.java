@@ -10,6 +10,12 @@ public class ControlBitsSignal extends Signal {
 
     private final long controlBits;
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private ControlBitsSignal() {
+        robotID = 0;
+        controlBits = 0;
+    }
+
     public ControlBitsSignal(int robotID, long controlBits) {
         this.robotID = robotID;
         this.controlBits = controlBits;
@@ -17,6 +17,11 @@ public class DeathSignal extends Signal {
      */
     private final int objectID;
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private DeathSignal() {
+        objectID = 0;
+    }
+
     /**
      * Creates a signal representing the death of
      * the specified object.
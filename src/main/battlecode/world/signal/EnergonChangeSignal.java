@@ -23,15 +23,28 @@ public class EnergonChangeSignal extends Signal {
      */
     private final double[] energon;
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private EnergonChangeSignal() {
+        robotIDs = null;
+        energon = null;
+    }
+
     /**
      * Creates a signal for a robot whose energon just changed.
      *
      * @param robot the robot whose energon just changed
      */
     public EnergonChangeSignal(InternalRobot[] robots) {
-        robotIDs = new int[robots.length];
-        energon = new double[robots.length];
-        for (int i = 0; i < robots.length; i++) {
+        this(robots, robots.length);
+    }
+
+    /**
+     * Creates a signal for the first count robots in the given array.
+     */
+    public EnergonChangeSignal(InternalRobot[] robots, int count) {
+        robotIDs = new int[count];
+        energon = new double[count];
+        for (int i = 0; i < count; i++) {
             robotIDs[i] = robots[i].getID();
             energon[i] = robots[i].getEnergonLevel();
         }
@@ -34,6 +34,14 @@ public class EnergonTransferSignal extends Signal {
      */
     private final double amount;
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private EnergonTransferSignal() {
+        robotID = 0;
+        targetLoc = null;
+        targetHeight = null;
+        amount = 0;
+    }
+
     /**
      * Creates a signal for a robot broadcast.
      *
@@ -23,6 +23,12 @@ public class FluxChangeSignal extends Signal {
      */
     public final double[] flux;
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private FluxChangeSignal() {
+        robotIDs = null;
+        flux = null;
+    }
+
     /**
      * Creates a signal for a robot whose energon just changed.
      *
@@ -27,6 +27,13 @@ public class IndicatorStringSignal extends Signal {
      */
     private final String newString;
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private IndicatorStringSignal() {
+        robotID = 0;
+        stringIndex = 0;
+        newString = null;
+    }
+
     /**
      * Creates a signal for a robot whose indicator string has just changed
      *
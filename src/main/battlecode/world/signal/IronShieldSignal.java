@@ -7,6 +7,11 @@ public class IronShieldSignal extends Signal {
 
     public final int robotID;
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private IronShieldSignal() {
+        robotID = 0;
+    }
+
     public IronShieldSignal(InternalRobot robot) {
         robotID = robot.getID();
     }
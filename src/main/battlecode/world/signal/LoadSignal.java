@@ -8,6 +8,12 @@ public class LoadSignal extends Signal {
     public final int transportID;
     public final int passengerID;
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private LoadSignal() {
+        transportID = 0;
+        passengerID = 0;
+    }
+
     public LoadSignal(InternalRobot transport, InternalRobot passenger) {
         transportID = transport.getID();
         passengerID = passenger.getID();
@@ -22,6 +22,12 @@ public class MatchObservationSignal extends Signal {
      */
     private final String observation;
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private MatchObservationSignal() {
+        robotID = 0;
+        observation = null;
+    }
+
     /**
      * Creates a signal for a robot whose indicator string has just changed
      *
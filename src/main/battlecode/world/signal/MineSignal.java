@@ -16,6 +16,13 @@ public class MineSignal extends Signal {
     private final Team mineTeam;
     private final boolean birth;
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private MineSignal() {
+        mineLoc = null;
+        mineTeam = null;
+        birth = false;
+    }
+
     public MineSignal(MapLocation mineLoc, Team mineTeam, boolean birth) {
     	this.mineLoc = mineLoc;
     	this.mineTeam = mineTeam;
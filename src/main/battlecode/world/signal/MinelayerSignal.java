@@ -8,6 +8,11 @@ public class MinelayerSignal extends Signal {
 	private final int robotID;
 	private boolean isLaying;
 	
+	// used when reading match files; BinaryInputStream sets the fields
+	private MinelayerSignal() {
+		robotID = 0;
+	}
+
 	public MinelayerSignal(InternalRobot robot, boolean isLaying) {
 		this.robotID = robot.getID();
 		this.isLaying = isLaying;
@@ -23,6 +23,12 @@ public class MovementOverrideSignal extends Signal {
     private final MapLocation newLoc;
 
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private MovementOverrideSignal() {
+        robotID = 0;
+        newLoc = null;
+    }
+
     /**
      * Creates a signal for a robot movement override.
      *
@@ -30,6 +30,14 @@ public class MovementSignal extends Signal {
 
     private final int delay;
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private MovementSignal() {
+        robotID = 0;
+        newLoc = null;
+        isMovingForward = false;
+        delay = 0;
+    }
+
     /**
      * Creates a signal for a robot broadcast.
      *
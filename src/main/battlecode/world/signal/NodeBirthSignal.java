@@ -7,6 +7,11 @@ public class NodeBirthSignal extends Signal {
 
     public final MapLocation location;
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private NodeBirthSignal() {
+        location = null;
+    }
+
     public NodeBirthSignal(MapLocation loc) {
         location = loc;
     }
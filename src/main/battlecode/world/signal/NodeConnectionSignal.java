@@ -7,6 +7,11 @@ public class NodeConnectionSignal extends Signal {
 
     public final MapLocation[][] connections;
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private NodeConnectionSignal() {
+        connections = null;
+    }
+
     public NodeConnectionSignal(MapLocation[][] connections) {
         this.connections = connections;
     }
@@ -8,6 +8,11 @@ public class RegenSignal extends Signal {
 	private static final long serialVersionUID = 8581954905914270494L;
 	public final int robotID;
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private RegenSignal() {
+        robotID = 0;
+    }
+
     public RegenSignal(InternalRobot r) {
         robotID = r.getID();
     }
@@ -14,6 +14,11 @@ public class ResearchChangeSignal extends Signal {
 		 */
 		public final double[][] progress;
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private ResearchChangeSignal() {
+        progress = null;
+    }
+
     /**
      * Creates a signal for updating research
      */
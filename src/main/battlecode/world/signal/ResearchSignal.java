@@ -21,6 +21,13 @@ public class ResearchSignal extends Signal {
     private final Team team;
 
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private ResearchSignal() {
+        robotID = 0;
+        upgrade = null;
+        team = null;
+    }
+
     /**
      * Creates a signal for starting a research
      */
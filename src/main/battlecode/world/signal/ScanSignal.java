@@ -8,6 +8,11 @@ public class ScanSignal extends Signal {
 	private static final long serialVersionUID = 962748541149750719L;
 	public final int robotID;
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private ScanSignal() {
+        robotID = 0;
+    }
+
     public ScanSignal(InternalRobot r) {
         robotID = r.getID();
     }
@@ -23,6 +23,12 @@ public class SetDirectionSignal extends Signal {
      */
     private final Direction dir;
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private SetDirectionSignal() {
+        robotID = 0;
+        dir = null;
+    }
+
     /**
      * Creates a signal for a robot that just changed its direction
      *
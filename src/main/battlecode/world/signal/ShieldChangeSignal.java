@@ -23,15 +23,28 @@ public class ShieldChangeSignal extends Signal {
      */
     private final double[] shield;
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private ShieldChangeSignal() {
+        robotIDs = null;
+        shield = null;
+    }
+
     /**
      * Creates a signal for a robot whose shield just changed.
      *
      * @param robot the robot whose shield just changed
      */
     public ShieldChangeSignal(InternalRobot[] robots) {
-        robotIDs = new int[robots.length];
-        shield = new double[robots.length];
-        for (int i = 0; i < robots.length; i++) {
+        this(robots, robots.length);
+    }
+
+    /**
+     * Creates a signal for the first count robots in the given array.
+     */
+    public ShieldChangeSignal(InternalRobot[] robots, int count) {
+        robotIDs = new int[count];
+        shield = new double[count];
+        for (int i = 0; i < count; i++) {
             robotIDs[i] = robots[i].getID();
             shield[i] = robots[i].getShieldLevel();
         }
@@ -8,6 +8,11 @@ public class ShieldSignal extends Signal {
 	private static final long serialVersionUID = -6281189788931319768L;
 	public final int robotID;
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private ShieldSignal() {
+        robotID = 0;
+    }
+
     public ShieldSignal(InternalRobot r) {
         robotID = r.getID();
     }
@@ -46,6 +46,15 @@ public class SpawnSignal extends Signal {
 //     */
 //    private final Direction dir;
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private SpawnSignal() {
+        robotID = 0;
+        parentID = 0;
+        loc = null;
+        type = null;
+        team = null;
+    }
+
     /**
      * Creates a signal for a robot that was just spawned
      */
@@ -9,6 +9,13 @@ public class TransferFluxSignal extends Signal {
     public final int toID;
     public final double amount;
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private TransferFluxSignal() {
+        fromID = 0;
+        toID = 0;
+        amount = 0;
+    }
+
     public TransferFluxSignal(InternalRobot from, InternalRobot to, double amount) {
         this.fromID = from.getID();
         this.toID = to.getID();
@@ -8,6 +8,12 @@ public class TurnOffSignal extends Signal {
     public final int robotID;
     public final boolean voluntary;
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private TurnOffSignal() {
+        robotID = 0;
+        voluntary = false;
+    }
+
     public TurnOffSignal(InternalRobot r, boolean voluntary) {
         this.robotID = r.getID();
         this.voluntary = voluntary;
@@ -9,6 +9,13 @@ public class TurnOnSignal extends Signal {
     public final int sourceID;
     public final boolean broadcast;
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private TurnOnSignal() {
+        robotIDs = null;
+        sourceID = 0;
+        broadcast = false;
+    }
+
     public TurnOnSignal(InternalRobot r, InternalRobot source, boolean broadcast) {
         this(new int[]{r.getID()}, source, broadcast);
     }
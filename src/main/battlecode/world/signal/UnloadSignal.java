@@ -10,6 +10,13 @@ public class UnloadSignal extends Signal {
     public final int passengerID;
     public final MapLocation unloadLoc;
 
+    // used when reading match files; BinaryInputStream sets the fields
+    private UnloadSignal() {
+        transportID = 0;
+        passengerID = 0;
+        unloadLoc = null;
+    }
+
     public UnloadSignal(InternalRobot transport, InternalRobot passenger, MapLocation loc) {
         transportID = transport.getID();
         passengerID = passenger.getID();